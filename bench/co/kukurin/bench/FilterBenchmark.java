@@ -0,0 +1,97 @@
+package co.kukurin.bench;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.kukurin.gui.model.concrete.FileListModel;
+
+/**
+ * {@link FileListModel#updateActiveSet(String)} over album lists of various sizes, laid out by
+ * {@link FixtureGenerator}.
+ * <p>
+ * Each invocation ends by clearing the filter, which also clears the model's cache of previous filters,
+ * so every invocation starts from scratch.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class FilterBenchmark {
+	
+	@Param({ "10000", "100000", "1000000" })
+	private int entries;
+	
+	private FileListModel model;
+	
+	@Setup
+	public void setup() {
+		List<File> files = new FixtureGenerator()
+				.albums(entries)
+				.depth(2)
+				.albumLocations(Paths.get("/music"));
+		
+		model = new FileListModel();
+		model.addAll(files);
+	}
+	
+	/**
+	 * A single, selective query.
+	 */
+	@Benchmark
+	public int query() {
+		model.updateActiveSet("album 4242");
+		int size = model.getSize();
+		
+		model.updateActiveSet("");
+		return size;
+	}
+	
+	/**
+	 * A query matching a large part of the list.
+	 */
+	@Benchmark
+	public int broadQuery() {
+		model.updateActiveSet("artist");
+		int size = model.getSize();
+		
+		model.updateActiveSet("");
+		return size;
+	}
+	
+	/**
+	 * A query typed one character at a time, each keystroke refining the previous filter.
+	 */
+	@Benchmark
+	public int typing() {
+		String query = "2001 album 42";
+		int size = 0;
+		
+		for(int i = 1; i <= query.length(); i++) {
+			model.updateActiveSet(query.substring(0, i));
+			size += model.getSize();
+		}
+		
+		model.updateActiveSet("");
+		return size;
+	}
+
+}
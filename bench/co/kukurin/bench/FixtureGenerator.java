@@ -0,0 +1,359 @@
+package co.kukurin.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import co.kukurin.utils.Constants;
+import co.kukurin.xml.XspfWriter;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Generates synthetic music libraries and matching playlists, used by the benchmarks and for load
+ * testing by hand.
+ * <p>
+ * A library consists of albums nested {@link #depth(int)} directories deep (artists, genres, ...), each
+ * album containing its tracks, optionally split into disc subdirectories, along with a few non-audio
+ * files such as covers and notes. Track extensions are picked from a given mix, by default
+ * {@link Constants#AUDIO_SUFFIXES}. All files are empty, and the layout only depends on the settings and
+ * the seed, so the same settings always produce the same library.
+ * <p>
+ * Usage, with settings given as <code>name=value</code> pairs:
+ * <pre>
+ * FixtureGenerator library &lt;directory&gt; [albums=100] [tracks=12] [depth=1] [discs=1] [noise=2] [seed=0] [playlist=0]
+ * FixtureGenerator playlist &lt;file&gt; &lt;size&gt; [albums=100] [tracks=12] [depth=1] [discs=1] [seed=0]
+ * </pre>
+ * The first generates a library, optionally along with a playlist of given size referencing its tracks;
+ * the second only writes a playlist referencing tracks of a library which doesn't have to exist.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class FixtureGenerator {
+	
+	private static final String[] NOISE_FILES = { "cover.jpg", "folder.jpg", "notes.txt", "album.nfo",
+			"desktop.ini", "playlist.m3u", "back.png", "log.cue" };
+	
+	private int albums = 100;
+	private int tracksPerAlbum = 12;
+	private int depth = 1;
+	private int discs = 1;
+	private int noiseFiles = 2;
+	private List<String> extensions = Constants.AUDIO_SUFFIXES;
+	private long seed;
+	
+	/**
+	 * A generated library.
+	 */
+	public static class Library {
+		private final Path root;
+		private final List<File> albums;
+		private final List<File> tracks;
+		
+		private Library(Path root, List<File> albums, List<File> tracks) {
+			this.root = root;
+			this.albums = albums;
+			this.tracks = tracks;
+		}
+		
+		public Path getRoot() {
+			return root;
+		}
+		
+		/**
+		 * @return Album directories, in the order they were generated.
+		 */
+		public List<File> getAlbums() {
+			return albums;
+		}
+		
+		/**
+		 * @return Audio files, in album order.
+		 */
+		public List<File> getTracks() {
+			return tracks;
+		}
+		
+		/**
+		 * Deletes the library along with its root directory.
+		 * 
+		 * @throws IOException I/O error.
+		 */
+		public void delete() throws IOException {
+			try(Stream<Path> paths = Files.walk(root)) {
+				for(Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+					Files.delete(path);
+			}
+		}
+	}
+	
+	/**
+	 * @param albums Number of albums (positive).
+	 * @return This generator.
+	 */
+	public FixtureGenerator albums(int albums) {
+		this.albums = requirePositive(albums);
+		return this;
+	}
+	
+	/**
+	 * @param tracksPerAlbum Number of tracks in each album (positive).
+	 * @return This generator.
+	 */
+	public FixtureGenerator tracksPerAlbum(int tracksPerAlbum) {
+		this.tracksPerAlbum = requirePositive(tracksPerAlbum);
+		return this;
+	}
+	
+	/**
+	 * @param depth Number of directory levels above each album; 0 places albums directly within the root.
+	 * @return This generator.
+	 */
+	public FixtureGenerator depth(int depth) {
+		if(depth < 0)
+			throw new IllegalArgumentException("Depth must not be negative!");
+		
+		this.depth = depth;
+		return this;
+	}
+	
+	/**
+	 * @param discs Number of disc subdirectories the tracks of each album are split into; 1 keeps all
+	 * tracks directly within the album.
+	 * @return This generator.
+	 */
+	public FixtureGenerator discs(int discs) {
+		this.discs = requirePositive(discs);
+		return this;
+	}
+	
+	/**
+	 * @param noiseFiles Number of non-audio files in each album.
+	 * @return This generator.
+	 */
+	public FixtureGenerator noiseFiles(int noiseFiles) {
+		if(noiseFiles < 0)
+			throw new IllegalArgumentException("Number of noise files must not be negative!");
+		
+		this.noiseFiles = noiseFiles;
+		return this;
+	}
+	
+	/**
+	 * @param extensions Extensions (including the dot) tracks are given, picked at random; repeating an
+	 * extension makes it proportionally more common.
+	 * @return This generator.
+	 */
+	public FixtureGenerator extensions(List<String> extensions) {
+		if(extensions.isEmpty())
+			throw new IllegalArgumentException("At least one extension is required!");
+		
+		this.extensions = new ArrayList<>(extensions);
+		return this;
+	}
+	
+	/**
+	 * @param seed Seed determining extensions and noise files.
+	 * @return This generator.
+	 */
+	public FixtureGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+	
+	/**
+	 * Generates the library within a new temporary directory.
+	 * 
+	 * @return Generated library.
+	 * @throws IOException I/O error.
+	 */
+	public Library generate() throws IOException {
+		return generate(Files.createTempDirectory("library-fixture"));
+	}
+	
+	/**
+	 * Generates the library within given directory.
+	 * 
+	 * @param root Library root; created if it doesn't exist.
+	 * @return Generated library.
+	 * @throws IOException I/O error.
+	 */
+	public Library generate(Path root) throws IOException {
+		// noise gets its own sequence, so track extensions only depend on the seed and track count
+		Random random = new Random(seed);
+		Random noiseRandom = new Random(~seed);
+		List<File> albumFiles = new ArrayList<>(albums);
+		List<File> trackFiles = new ArrayList<>(albums * tracksPerAlbum);
+		
+		for(int a = 0; a < albums; a++) {
+			Path album = Files.createDirectories(albumPath(root, a));
+			albumFiles.add(album.toFile());
+			
+			for(int t = 0; t < tracksPerAlbum; t++) {
+				Path track = trackPath(album, t, random);
+				Files.createDirectories(track.getParent());
+				trackFiles.add(Files.createFile(track).toFile());
+			}
+			
+			List<String> noise = new ArrayList<>();
+			Collections.addAll(noise, NOISE_FILES);
+			Collections.shuffle(noise, noiseRandom);
+			
+			for(int n = 0; n < noiseFiles; n++)
+				Files.createFile(album.resolve(n < noise.size() ? noise.get(n) : "extra " + n + ".txt"));
+		}
+		
+		return new Library(root, albumFiles, trackFiles);
+	}
+	
+	/**
+	 * Computes album locations the way {@link #generate(Path)} would, without touching the file system.
+	 * 
+	 * @param root Library root.
+	 * @return Album locations.
+	 */
+	public List<File> albumLocations(Path root) {
+		List<File> result = new ArrayList<>(albums);
+		for(int a = 0; a < albums; a++)
+			result.add(albumPath(root, a).toFile());
+		return result;
+	}
+	
+	/**
+	 * Writes a playlist referencing tracks of the library {@link #generate(Path)} would create, without
+	 * creating the library itself. In case the playlist is larger than the library, tracks are repeated.
+	 * 
+	 * @param root Library root.
+	 * @param playlist Playlist file.
+	 * @param size Number of playlist entries.
+	 * @throws IOException I/O error.
+	 */
+	public void writePlaylist(Path root, Path playlist, int size) throws IOException {
+		Random random = new Random(seed);
+		int libraryTracks = albums * tracksPerAlbum;
+		
+		try(XspfWriter writer = new XspfWriter(new BufferedOutputStream(Files.newOutputStream(playlist), 1 << 16),
+				playlist.getFileName().toString())) {
+			for(int i = 0; i < size; i++) {
+				int track = i % libraryTracks;
+				
+				// restart the sequence along with the library, so extensions match generated files
+				if(track == 0)
+					random = new Random(seed);
+				
+				Path album = albumPath(root, track / tracksPerAlbum);
+				writer.write(new Track(trackPath(album, track % tracksPerAlbum, random).toFile()));
+			}
+		}
+	}
+	
+	/**
+	 * Writes a playlist of given size referencing tracks of given library, repeating them if needed.
+	 * 
+	 * @param library Generated library.
+	 * @param playlist Playlist file.
+	 * @param size Number of playlist entries.
+	 * @throws IOException I/O error.
+	 */
+	public static void writePlaylist(Library library, Path playlist, int size) throws IOException {
+		try(XspfWriter writer = new XspfWriter(new BufferedOutputStream(Files.newOutputStream(playlist), 1 << 16),
+				playlist.getFileName().toString())) {
+			for(int i = 0; i < size; i++)
+				writer.write(new Track(library.getTracks().get(i % library.getTracks().size())));
+		}
+	}
+	
+	private Path albumPath(Path root, int album) {
+		Path path = root;
+		
+		// every level groups ten entries of the level below it
+		for(int level = depth; level > 0; level--) {
+			long group = album;
+			for(int i = 0; i < level && group > 0; i++)
+				group /= 10;
+			
+			path = path.resolve((level == 1 ? "Artist " : "Group ") + group);
+		}
+		
+		return path.resolve(String.format("%d - Album %d", 1960 + album % 60, album));
+	}
+	
+	/**
+	 * Consumes one random number per track, which keeps playlists in sync with generated libraries.
+	 */
+	private Path trackPath(Path album, int track, Random random) {
+		String extension = extensions.get(random.nextInt(extensions.size()));
+		String name = String.format("%02d - Track %d%s", track + 1, track + 1, extension);
+		
+		if(discs == 1)
+			return album.resolve(name);
+		
+		int perDisc = (tracksPerAlbum + discs - 1) / discs;
+		return album.resolve("CD" + (track / perDisc + 1)).resolve(name);
+	}
+	
+	private static int requirePositive(int value) {
+		if(value <= 0)
+			throw new IllegalArgumentException("Value must be positive!");
+		return value;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2 || !(args[0].equals("library") || args[0].equals("playlist"))) {
+			System.err.println("Usage: FixtureGenerator library <directory> [name=value...]");
+			System.err.println("       FixtureGenerator playlist <file> <size> [name=value...]");
+			System.exit(1);
+		}
+		
+		boolean library = args[0].equals("library");
+		int firstSetting = library ? 2 : 3;
+		int playlistSize = library ? 0 : Integer.parseInt(args[2]);
+		
+		FixtureGenerator generator = new FixtureGenerator();
+		
+		for(int i = firstSetting; i < args.length; i++) {
+			String[] setting = args[i].split("=", 2);
+			if(setting.length != 2)
+				throw new IllegalArgumentException("Invalid setting: " + args[i]);
+			
+			switch(setting[0]) {
+			case "albums": generator.albums(Integer.parseInt(setting[1])); break;
+			case "tracks": generator.tracksPerAlbum(Integer.parseInt(setting[1])); break;
+			case "depth": generator.depth(Integer.parseInt(setting[1])); break;
+			case "discs": generator.discs(Integer.parseInt(setting[1])); break;
+			case "noise": generator.noiseFiles(Integer.parseInt(setting[1])); break;
+			case "seed": generator.seed(Long.parseLong(setting[1])); break;
+			case "playlist": playlistSize = Integer.parseInt(setting[1]); break;
+			default: throw new IllegalArgumentException("Unknown setting: " + setting[0]);
+			}
+		}
+		
+		Path target = Paths.get(args[1]).toAbsolutePath();
+		
+		if(library) {
+			Library generated = generator.generate(target);
+			System.out.println("Generated " + generated.getAlbums().size() + " albums with "
+					+ generated.getTracks().size() + " tracks in " + target);
+			
+			if(playlistSize > 0) {
+				Path playlist = target.resolve("fixture" + Constants.VLC_PLAYLIST_EXTENSION);
+				writePlaylist(generated, playlist, playlistSize);
+				System.out.println("Wrote " + playlistSize + " entries to " + playlist);
+			}
+		} else {
+			Path root = Paths.get("/music").toAbsolutePath();
+			generator.writePlaylist(root, target, playlistSize);
+			System.out.println("Wrote " + playlistSize + " entries to " + target);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package co.kukurin.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.kukurin.gui.model.UpdateableListModel;
+
+/**
+ * Bulk mutations of {@link UpdateableListModel}. Each iteration times a single call on a freshly filled
+ * model, so removals always start from the same list; refilling the model before each invocation of an
+ * average time benchmark would take longer than most of the calls being measured.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 100, batchSize = 1)
+@Measurement(iterations = 200, batchSize = 1)
+@Fork(value = 1, jvmArgs = { "-Djava.awt.headless=true" })
+public class ModelBenchmark {
+	
+	@Param({ "10000", "100000" })
+	private int size;
+	
+	private List<Integer> elements;
+	private List<Integer> everyTenth;
+	private int[] everyOtherIndex;
+	
+	private UpdateableListModel<Integer> model;
+	
+	@Setup
+	public void setup() {
+		elements = new ArrayList<>(size);
+		everyTenth = new ArrayList<>(size / 10);
+		everyOtherIndex = new int[size / 2];
+		
+		for(int i = 0; i < size; i++) {
+			elements.add(i);
+			if(i % 10 == 0)
+				everyTenth.add(i);
+			if(i % 2 == 0)
+				everyOtherIndex[i / 2] = i;
+		}
+	}
+	
+	@Setup(Level.Iteration)
+	public void fill() {
+		model = new UpdateableListModel<>();
+		model.addAll(elements);
+	}
+	
+	@Benchmark
+	public UpdateableListModel<Integer> addAll() {
+		model.addAll(elements);
+		return model;
+	}
+	
+	@Benchmark
+	public UpdateableListModel<Integer> addOneByOneInBatch() {
+		model.batch(() -> elements.forEach(model::add));
+		return model;
+	}
+	
+	@Benchmark
+	public UpdateableListModel<Integer> removeAll() {
+		model.removeAll(everyTenth);
+		return model;
+	}
+	
+	@Benchmark
+	public UpdateableListModel<Integer> removeIndices() {
+		model.removeIndices(everyOtherIndex);
+		return model;
+	}
+	
+	@Benchmark
+	public UpdateableListModel<Integer> removeByElement() {
+		for(int i = 0; i < 100; i++)
+			model.remove(everyTenth.get(i));
+		return model;
+	}
+
+}
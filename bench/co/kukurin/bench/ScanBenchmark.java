@@ -0,0 +1,99 @@
+package co.kukurin.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.kukurin.gui.model.concrete.PlaylistModel;
+import co.kukurin.library.AlbumScanner;
+import co.kukurin.library.LibraryIndex;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Album scanning as done by {@link co.kukurin.gui.main.JPlaylistComponent#addAlbums}: all albums are
+ * scanned in parallel, and the resulting tracklists are added to a playlist model in one step.
+ * <p>
+ * The fixture library is generated once per trial by {@link FixtureGenerator}, with each album split into
+ * two discs; the file system cache is therefore warm, and the benchmark measures traversal rather than disk
+ * access. Building a {@link LibraryIndex}, which discovers the albums themselves, is measured as well.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+	
+	@Param({ "100", "1000" })
+	private int albums;
+	
+	@Param({ "12" })
+	private int tracksPerAlbum;
+	
+	private FixtureGenerator.Library library;
+	private List<File> albumLocations;
+	private AlbumScanner scanner;
+	
+	@Setup
+	public void setup() throws IOException {
+		library = new FixtureGenerator()
+				.albums(albums)
+				.tracksPerAlbum(tracksPerAlbum)
+				.discs(2)
+				.generate();
+		albumLocations = library.getAlbums();
+		
+		scanner = new AlbumScanner(Runtime.getRuntime().availableProcessors());
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		library.delete();
+	}
+	
+	@Benchmark
+	public PlaylistModel addAlbums() throws IOException {
+		List<List<Track>> tracklists = scanner.scan(albumLocations);
+		Map<File, List<Track>> result = new LinkedHashMap<>();
+		
+		Iterator<List<Track>> tracklistIterator = tracklists.iterator();
+		for(File album : albumLocations)
+			result.put(album, tracklistIterator.next());
+		
+		PlaylistModel model = new PlaylistModel(null);
+		model.putAll(result);
+		return model;
+	}
+	
+	@Benchmark
+	public List<List<Track>> scan() throws IOException {
+		return scanner.scan(albumLocations);
+	}
+	
+	@Benchmark
+	public LibraryIndex buildIndex() throws IOException {
+		return LibraryIndex.build(library.getRoot().toFile());
+	}
+
+}
@@ -0,0 +1,100 @@
+package co.kukurin.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.kukurin.xml.XMLPlaylistUtils;
+import co.kukurin.xml.items.ColumnarTrackList;
+import co.kukurin.xml.items.Playlist;
+
+/**
+ * Playlist writing and reading through {@link XMLPlaylistUtils}, using playlists written by
+ * {@link FixtureGenerator}.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class XspfBenchmark {
+	
+	@Param({ "10000", "100000" })
+	private int tracks;
+	
+	private File directory;
+	private File playlistFile;
+	private Playlist playlist;
+	
+	@Setup
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("xspf-benchmark").toFile();
+		playlistFile = new File(directory, "playlist.xspf");
+		
+		new FixtureGenerator()
+				.albums(Math.max(1, tracks / 12))
+				.writePlaylist(Paths.get("/music"), playlistFile.toPath(), tracks);
+		
+		playlist = XMLPlaylistUtils.loadPlaylist(playlistFile);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		for(File f : directory.listFiles())
+			Files.delete(f.toPath());
+		Files.delete(directory.toPath());
+	}
+	
+	@Benchmark
+	public File create() throws Exception {
+		File result = new File(directory, "created.xspf");
+		XMLPlaylistUtils.createPlaylist(playlist, result);
+		return result;
+	}
+	
+	@Benchmark
+	public Playlist load() throws Exception {
+		return XMLPlaylistUtils.loadPlaylist(playlistFile);
+	}
+	
+	@Benchmark
+	public int loadChunked() throws Exception {
+		int[] count = { 0 };
+		XMLPlaylistUtils.loadPlaylist(playlistFile, 1024, chunk -> count[0] += chunk.size());
+		return count[0];
+	}
+	
+	@Benchmark
+	public ColumnarTrackList loadColumnar() throws Exception {
+		ColumnarTrackList result = new ColumnarTrackList();
+		XMLPlaylistUtils.loadPlaylist(playlistFile, result::add);
+		return result;
+	}
+	
+	@Benchmark
+	public Playlist roundTrip() throws Exception {
+		File result = new File(directory, "round-trip.xspf");
+		XMLPlaylistUtils.createPlaylist(playlist, result);
+		return XMLPlaylistUtils.loadPlaylist(result);
+	}
+
+}
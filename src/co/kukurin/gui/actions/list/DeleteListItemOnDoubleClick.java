@@ -9,11 +9,13 @@ import co.kukurin.gui.model.UpdateableListModel;
 
 public class DeleteListItemOnDoubleClick extends MouseAdapter {
 	private JList<?> list;
-	private UpdateableListModel<?> model;
 	
-	public DeleteListItemOnDoubleClick(JList<?> list, UpdateableListModel<?> model) {
+	/**
+	 * @param list List whose items are to be deleted; its model must be an {@link UpdateableListModel}.
+	 * The model is looked up on each click, so the list's model may be replaced.
+	 */
+	public DeleteListItemOnDoubleClick(JList<?> list) {
 		this.list = list;
-		this.model = model;
 	}
 	
 	@Override
@@ -23,7 +25,7 @@ public class DeleteListItemOnDoubleClick extends MouseAdapter {
 		
 		int sel = list.getSelectedIndex();
 		if(sel >= 0)
-			model.remove(sel);
+			((UpdateableListModel<?>) list.getModel()).removeIndices(new int[] { sel });
 		
 		list.setSelectedIndex(-1);
 	}
@@ -10,11 +10,13 @@ import co.kukurin.gui.model.UpdateableListModel;
 public class DeleteListItemsOnKeypress extends KeyAdapter {
 	
 	private JList<?> list;
-	private UpdateableListModel<?> model;
 	
-	public DeleteListItemsOnKeypress(JList<?> list, UpdateableListModel<?> model) {
+	/**
+	 * @param list List whose items are to be deleted; its model must be an {@link UpdateableListModel}.
+	 * The model is looked up on each keypress, so the list's model may be replaced.
+	 */
+	public DeleteListItemsOnKeypress(JList<?> list) {
 		this.list = list;
-		this.model = model;
 	}
 	
 	@Override
@@ -22,9 +24,7 @@ public class DeleteListItemsOnKeypress extends KeyAdapter {
 		int kc = e.getKeyCode();
 		
 		if(kc == KeyEvent.VK_DELETE || kc == KeyEvent.VK_ENTER) {
-			int[] selected = list.getSelectedIndices();
-			for(int i = selected.length - 1; i >= 0; i--)
-				model.remove(selected[i]);
+			((UpdateableListModel<?>) list.getModel()).removeIndices(list.getSelectedIndices());
 			
 			list.setSelectedIndex(-1);
 		}
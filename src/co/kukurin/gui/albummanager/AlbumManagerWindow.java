@@ -22,6 +22,8 @@ import co.kukurin.gui.actions.list.DeleteListItemOnDoubleClick;
 import co.kukurin.gui.actions.list.DeleteListItemsOnKeypress;
 import co.kukurin.gui.main.MainWindow;
 import co.kukurin.gui.model.concrete.FileListModel;
+import co.kukurin.library.LibraryIndex;
+import co.kukurin.library.LibraryWatcher;
 import co.kukurin.utils.Constants;
 import co.kukurin.utils.PropertyManager;
 import co.kukurin.utils.layout.SwingUtils;
@@ -53,6 +55,8 @@ public class AlbumManagerWindow extends JFrame {
 	
 	private JButton saveBtn;
 	
+	private LibraryWatcher watcher;
+	
 	/**
 	 * Close operation; returns focus to and enables the caller.
 	 */
@@ -62,6 +66,8 @@ public class AlbumManagerWindow extends JFrame {
 			caller.setEnabled(true);
 			caller.requestFocus();
 			
+			stopWatchingLibrary();
+			
 			AlbumManagerWindow.this.dispose();
 		}
 	};
@@ -95,7 +101,9 @@ public class AlbumManagerWindow extends JFrame {
 	}
 
 	private void initMainPanel() throws IOException {
-		left = new JSearchableAlbumListComponent("Loaded from disk", new File(PropertyManager.get(Constants.PROPERTY_MUSIC_LOCATION)));
+		LibraryIndex index = LibraryIndex.open(new File(PropertyManager.get(Constants.PROPERTY_MUSIC_LOCATION)));
+		
+		left = new JSearchableAlbumListComponent("Loaded from disk", index.getAlbums());
 		right = new JSearchableAlbumListComponent("Currently in playlist", caller.getAlbumPaths());
 		
 		JPanel listContainer = new JPanel(new GridLayout(1, 2, 10, 0));
@@ -105,6 +113,33 @@ public class AlbumManagerWindow extends JFrame {
 		listContainer.add(left, BorderLayout.WEST);
 		listContainer.add(right, BorderLayout.EAST);
 		add(listContainer, BorderLayout.CENTER);
+		
+		watchLibrary(index);
+	}
+	
+	/**
+	 * Starts watching the library, applying all changes to the album list as they occur;
+	 * changes made while the index was not being watched are applied as well.
+	 * 
+	 * @param index Index currently displayed.
+	 */
+	private void watchLibrary(LibraryIndex index) throws IOException {
+		watcher = new LibraryWatcher(index, changes -> SwingUtilities.invokeLater(() ->
+			left.getFileListModel().update(changes.getAddedAlbums(), changes.getRemovedAlbums())));
+		watcher.start();
+	}
+	
+	private void stopWatchingLibrary() {
+		if(watcher == null)
+			return;
+		
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		watcher = null;
 	}
 	
 	private void initBottomPanel() {
@@ -154,8 +189,8 @@ public class AlbumManagerWindow extends JFrame {
 			}
 		});
 		
-		right.addMouseListener(new DeleteListItemOnDoubleClick(right.getFileList(), right.getFileListModel()));
-		right.addKeyListener(new DeleteListItemsOnKeypress(right.getFileList(), right.getFileListModel()));
+		right.addMouseListener(new DeleteListItemOnDoubleClick(right.getFileList()));
+		right.addKeyListener(new DeleteListItemsOnKeypress(right.getFileList()));
 	}
 	
 	private void copySelectedLeftToRight() {
@@ -8,16 +8,8 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Objects;
-import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
@@ -29,6 +21,7 @@ import javax.swing.SwingUtilities;
 
 import co.kukurin.gui.actions.list.SelectListIndicesViaKeypress;
 import co.kukurin.gui.model.concrete.FileListModel;
+import co.kukurin.utils.layout.CachingListCellRenderer;
 import co.kukurin.utils.layout.SwingUtils;
 
 /**
@@ -43,7 +36,7 @@ public class JSearchableAlbumListComponent extends JPanel {
 	private KeyAdapter updateActiveSetOnKeypress = new KeyAdapter() {
 		@Override
 		public void keyReleased(KeyEvent e) {
-			((FileListModel)fileList.getModel()).updateActiveSet(searchField.getText());
+			searchPipeline.submit(searchField.getText());
 		}
 	};
 
@@ -54,6 +47,7 @@ public class JSearchableAlbumListComponent extends JPanel {
 	private JLabel searchLabel;
 	private JTextField searchField;
 	private JList<File> fileList;
+	private SearchPipeline searchPipeline;
 	
 	/**
 	 * Creates the default searchable album list instance, along with given title.
@@ -68,7 +62,10 @@ public class JSearchableAlbumListComponent extends JPanel {
 		else
 			titleLabel = null;
 		
-		fileList = new JList<>(new FileListModel());
+		FileListModel model = new FileListModel();
+		fileList = new JList<>(model);
+		CachingListCellRenderer.install(fileList);
+		searchPipeline = new SearchPipeline(model);
 		fileList.setFocusable(false);
 		fileList.addMouseListener(new MouseAdapter() {
 			@Override
@@ -97,17 +94,6 @@ public class JSearchableAlbumListComponent extends JPanel {
 		this("", files);
 	}
 	
-	public JSearchableAlbumListComponent(String title, File p) throws IOException {
-		this(title);
-	
-		Objects.requireNonNull(p);
-		traversePathAndAdd(p);
-	}
-
-	public JSearchableAlbumListComponent(File p) throws IOException {
-		this("", p);
-	}
-	
 	private void initSearchField() {
 		searchField.setToolTipText(TOOLTIP_TEXT);
 		addKeyListener(updateActiveSetOnKeypress);
@@ -132,26 +118,6 @@ public class JSearchableAlbumListComponent extends JPanel {
 		add(fileListContainer, BorderLayout.CENTER);
 	}
 	
-	private void traversePathAndAdd(File p) throws IOException {
-		FileListModel model = (FileListModel) fileList.getModel();
-		Files.walkFileTree(p.toPath(), new SimpleFileVisitor<Path>() {
-			Set<Path> containsFiles = new HashSet<>();
-			
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				containsFiles.add(file.getParent());
-				return super.visitFile(file, attrs);
-			}
-			
-			@Override
-			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-				if(containsFiles.contains(dir))
-					model.add(dir.toFile());
-				return super.postVisitDirectory(dir, exc);
-			}
-		});
-	}
-	
 	public JList<File> getFileList() {
 		return fileList;
 	}
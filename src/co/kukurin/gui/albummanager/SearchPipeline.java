@@ -0,0 +1,116 @@
+package co.kukurin.gui.albummanager;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import co.kukurin.gui.model.concrete.FileListModel;
+import co.kukurin.utils.LatencyMetric;
+
+/**
+ * Filters a {@link FileListModel} outside of the event dispatch thread.
+ * <p>
+ * Each submitted query is delayed by {@link #DEBOUNCE_MILLIS}, so a burst of keystrokes results in a
+ * single computation. Every query is tagged with a generation number; a newer query cancels the
+ * computation of an older one, and only the result of the latest query is ever published to the model.
+ * A result computed before the model's fileset changed is computed again, rather than published.
+ * <p>
+ * The time between a query being submitted and its result being painted is recorded in a metric shared by
+ * all pipelines, see {@link #getLatency()}; it is shown from the main window's Properties menu.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class SearchPipeline {
+	
+	private static final long DEBOUNCE_MILLIS = 80;
+	
+	/**
+	 * Shared by all pipelines; a single thread is enough since stale computations are cancelled.
+	 */
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "search-pipeline");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	/**
+	 * Shared by all pipelines, so it outlives the windows pipelines belong to.
+	 */
+	private static final LatencyMetric LATENCY = new LatencyMetric("Search latency");
+	
+	private final FileListModel model;
+	private final AtomicLong generation;
+	
+	private ScheduledFuture<?> pending;
+	private String lastQuery;
+	
+	/**
+	 * @param model Model which is to be filtered.
+	 */
+	public SearchPipeline(FileListModel model) {
+		this.model = Objects.requireNonNull(model);
+		this.generation = new AtomicLong();
+	}
+	
+	/**
+	 * Schedules given query, cancelling any query which has not been published yet. Queries equal to
+	 * the last submitted one are ignored.
+	 * <p>
+	 * Should only be called from the event dispatch thread.
+	 * 
+	 * @param query Filter string, see {@link FileListModel#updateActiveSet(String)}.
+	 */
+	public void submit(String query) {
+		if(query.equals(lastQuery))
+			return;
+		
+		lastQuery = query;
+		long submitted = System.nanoTime();
+		long current = generation.incrementAndGet();
+		
+		if(pending != null)
+			pending.cancel(false);
+		
+		pending = EXECUTOR.schedule(() -> compute(query, current, submitted),
+				DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @return Time from a query being submitted to its result being painted, over all pipelines.
+	 */
+	public static LatencyMetric getLatency() {
+		return LATENCY;
+	}
+	
+	private void compute(String query, long queryGeneration, long submitted) {
+		FileListModel.ActiveSet result;
+		
+		try {
+			result = model.computeActiveSet(query, () -> generation.get() != queryGeneration);
+		} catch(CancellationException e) {
+			return;
+		}
+		
+		SwingUtilities.invokeLater(() -> {
+			if(generation.get() != queryGeneration)
+				return;
+			
+			if(!model.publishActiveSet(result)) {
+				// the fileset has changed in the meantime
+				pending = EXECUTOR.schedule(() -> compute(query, queryGeneration, submitted), 0, TimeUnit.MILLISECONDS);
+				return;
+			}
+			
+			// repaints requested while publishing are processed before this event
+			SwingUtilities.invokeLater(() -> LATENCY.record(System.nanoTime() - submitted));
+		});
+	}
+
+}
@@ -2,37 +2,64 @@ package co.kukurin.gui.main;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import javax.swing.JList;
+import javax.swing.SwingWorker;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
 import co.kukurin.gui.actions.list.DeleteListItemOnDoubleClick;
 import co.kukurin.gui.actions.list.DeleteListItemsOnKeypress;
+import co.kukurin.gui.model.concrete.PlaylistJournal;
 import co.kukurin.gui.model.concrete.PlaylistModel;
+import co.kukurin.library.AlbumScanner;
+import co.kukurin.metadata.TrackTagger;
 import co.kukurin.utils.Constants;
-import co.kukurin.utils.layout.SwingUtils;
+import co.kukurin.utils.layout.CachingListCellRenderer;
+import co.kukurin.xml.PlaylistSnapshot;
 import co.kukurin.xml.XMLPlaylistUtils;
+import co.kukurin.xml.items.ColumnarTrackList;
 import co.kukurin.xml.items.Playlist;
 import co.kukurin.xml.items.Track;
 
 @SuppressWarnings("serial")
 public class JPlaylistComponent extends JList<Track> implements ListDataListener {
 	
+	/**
+	 * Number of tracks added to the model at once while a playlist is being loaded.
+	 */
+	private static final int LOAD_CHUNK_SIZE = 1024;
+	
 	private PlaylistModel model;
 	private File modelLocation;
 	
+	/**
+	 * Scanner used to collect album tracklists from disk.
+	 */
+	private final AlbumScanner scanner;
+	
+	/**
+	 * Tagger reading metadata of added and loaded tracks.
+	 */
+	private final TrackTagger tagger;
+	
 	/**
 	 * Tells us whether currently opened playlist has been modified.
 	 * <p>
@@ -42,85 +69,82 @@ public class JPlaylistComponent extends JList<Track> implements ListDataListener
 	 */
 	private boolean hasBeenModified;
 	
+	/**
+	 * Journal of changes made to the current model since its playlist was last saved; null if it couldn't
+	 * be opened.
+	 */
+	private PlaylistJournal journal;
+	
+	/**
+	 * Albums being scanned in the background, mapped to the worker which adds them once they are ready.
+	 * Only accessed on the event dispatch thread.
+	 */
+	private final Map<File, AlbumAdder> pendingAlbums = new HashMap<>();
+	
 	/**
 	 * Default constructor.
+	 * <p>
+	 * Changes left in the journal of an unsaved playlist (e.g. by a crash) are recovered into the new model.
 	 */
 	public JPlaylistComponent() {
 		hasBeenModified = false;
+		scanner = new AlbumScanner();
+		tagger = new TrackTagger();
 		
 		model = new PlaylistModel(this);
 		setModel(model);
+		CachingListCellRenderer.install(this);
+		startJournal(null, true);
 		
-		addKeyListener(new DeleteListItemsOnKeypress(this, model));
-		addMouseListener(new DeleteListItemOnDoubleClick(this, model));
+		addKeyListener(new DeleteListItemsOnKeypress(this));
+		addMouseListener(new DeleteListItemOnDoubleClick(this));
 	}
 
 	/**
-	 * Adds all albums from collection.
+	 * Adds all albums from collection in the background.
+	 * <p>
+	 * Albums are scanned in parallel using {@link AlbumScanner}, their tracks are tagged in parallel using
+	 * {@link TrackTagger}, and they are added to the model in one step on the event dispatch thread, in the
+	 * same order as given. Until then, the albums are pending: they are listed by {@link #getAlbums()},
+	 * and are not added at all if they are removed or the playlist is replaced in the meantime.
+	 * <p>
+	 * Should only be called from the event dispatch thread.
 	 * 
 	 * @param paths Collection of paths which represent albums on the system.
-	 * @throws Exception I/O error, masked as {@link RuntimeException} so it is possible to throw it from
-	 * within a {@link Runnable} instance.
+	 * @param onDone Called on the event dispatch thread once the albums have been added, with the error
+	 * which has occurred; null if there was none.
+	 * @return Worker adding the albums, already started.
 	 */
-	public void addAlbums(Collection<File> paths) throws Exception {
-		for(File p : paths) {
-			List<Track> tracklistToAdd = new ArrayList<>();
-			
-			// TODO thread creation might be necessary depending on the size of the
-			// subdirectories but probably the best solution would be to remove it here
-			// because of the loop that's going on outside.
-			Thread t = new Thread(() -> {
-				try {
-					Files.walkFileTree(p.toPath(), new SimpleFileVisitor<Path>() {
-						@Override
-						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-							boolean hasValidMusicExtension = false;
-							String filename = file.getFileName().toString();
-							
-							for(String extension : Constants.AUDIO_SUFFIXES) {
-								if(filename.endsWith(extension)) {
-									hasValidMusicExtension = true;
-									break;
-								}
-							}
-							
-							if(hasValidMusicExtension)
-								tracklistToAdd.add(new Track(file.toFile()));
-							
-							return FileVisitResult.CONTINUE;
-						}
-					});
-				} catch (Exception e) {
-					// wrapper exception
-					throw new RuntimeException(e);
-				}
-			});
-			
-			t.start();
-			t.join();
-			
-			model.put(p,  tracklistToAdd);
-		}
+	public SwingWorker<?, ?> addAlbums(Collection<File> paths, Consumer<Exception> onDone) {
+		AlbumAdder adder = new AlbumAdder(new ArrayList<>(paths), onDone);
+		for(File album : paths)
+			pendingAlbums.put(album, adder);
+		
+		adder.execute();
+		return adder;
 	}
 	
 	/**
-	 * Adds album to model whose location corresponds to given file.
+	 * Adds album to model whose location corresponds to given file, as in {@link #addAlbums(Collection, Consumer)}.
 	 * 
 	 * @param f
-	 * @throws Exception I/O error.
+	 * @param onDone Called on the event dispatch thread once the album has been added, with the error
+	 * which has occurred; null if there was none.
 	 */
-	public void addAlbum(File f) throws Exception {
+	public void addAlbum(File f, Consumer<Exception> onDone) {
 		List<File> al = new ArrayList<>();
 		al.add(f);
-		addAlbums(al);
+		addAlbums(al, onDone);
 	}
 	
 	/**
-	 * Removes album from model whose location corresponds to given file.
+	 * Removes album from model whose location corresponds to given file; must be called on the event
+	 * dispatch thread, as all other changes to the model are.
 	 * @param f
 	 */
 	public void removeAlbum(File f) {
-		SwingUtils.startupThread(() -> model.remove(f));
+		pendingAlbums.remove(f);
+		model.remove(f);
 	}
 	
 	
@@ -129,50 +153,50 @@ public class JPlaylistComponent extends JList<Track> implements ListDataListener
 	 * valid albums.
 	 * <p>
 	 * Albums are considered to be valid if their {@link File} representation can be found
-	 * within given collection.
+	 * within given collection. The current albums are diffed against given ones: albums which
+	 * are no longer present are removed at once, only new albums are scanned and appended in
+	 * the given order, and tracks of all other albums are kept as they are, in their current order.
+	 * 
+	 * Pending albums (see {@link #addAlbums(Collection, Consumer)}) count as current ones.
 	 * 
 	 * @param albums Collection which contains albums which are to be kept
-	 * @throws Exception I/O error
+	 * @param onDone Called on the event dispatch thread once new albums have been added, with the error
+	 * which has occurred; null if there was none.
 	 */
-	public void updateAlbums(Collection<File> albums) throws Exception {
+	public void updateAlbums(Collection<File> albums, Consumer<Exception> onDone) {
 		Objects.requireNonNull(albums);
 		
-		// TODO
-		Iterator<File> it = model.getLoadedAlbums().keySet().iterator();
+		Set<File> kept = new LinkedHashSet<>(albums);
+		Set<File> loaded = model.getLoadedAlbums();
+		pendingAlbums.keySet().retainAll(kept);
 		
-		while(it.hasNext()) {
-			File album = it.next();
-			boolean contains = false;
-			
-			for(File parameterAlbum : albums) {
-				if(parameterAlbum == album) {
-					// if it's exactly the same object, no changes were made
-					
-					albums.remove(parameterAlbum);
-					contains = true;
-					break;
-				} else if(album.equals(parameterAlbum)) {
-					// otherwise, we need to update as the user has probably removed the
-					// album from the playlist and then added it again.
-					break;
-				}
-			}
-			
-			if(!contains) {
-				model.remove(album, false);
-				it.remove();
-			}
+		List<File> removed = new ArrayList<>();
+		for(File album : loaded) {
+			if(!kept.contains(album))
+				removed.add(album);
 		}
 		
-		resetPlaylist();
-		addAlbums(albums);
+		List<File> added = new ArrayList<>();
+		for(File album : kept) {
+			if(!loaded.contains(album) && !pendingAlbums.containsKey(album))
+				added.add(album);
+		}
+		
+		model.removeAlbums(removed);
+		
+		if(!added.isEmpty())
+			addAlbums(added, onDone);
+		else if(onDone != null)
+			onDone.accept(null);
 	}
 	
 	/**
-	 * @return All loaded albums in list's internal model.
+	 * @return All albums in list's internal model, followed by the pending ones.
 	 */
 	public Collection<File> getAlbums() {
-		return model.getLoadedAlbums().keySet();
+		Set<File> albums = new LinkedHashSet<>(model.getLoadedAlbums());
+		albums.addAll(pendingAlbums.keySet());
+		return albums;
 	}
 	
 	/**
@@ -196,6 +220,10 @@ public class JPlaylistComponent extends JList<Track> implements ListDataListener
 	}
 
 	/**
+	 * Saves the playlist, which is from then on located at given path; its journal is started anew.
+	 * <p>
+	 * A {@link PlaylistSnapshot} is written next to the playlist, so it can be reopened without parsing it.
+	 * 
 	 * @param path File which the file will be saved to.
 	 * @throws Exception I/O error.
 	 */
@@ -206,53 +234,114 @@ public class JPlaylistComponent extends JList<Track> implements ListDataListener
 		
 		String filename = path.getFileName().toString();
 		Playlist toCreate = new Playlist(filename, model.getItems());
-		XMLPlaylistUtils.createPlaylist(toCreate, path.toFile());
+		File saved = XMLPlaylistUtils.createPlaylist(toCreate, path.toFile());
+		
+		try {
+			PlaylistSnapshot.write(saved, model.getItems(), model.getAlbumRuns());
+		} catch(IOException e) {
+			// the playlist itself has been saved, and a missing or outdated snapshot is simply not used
+			e.printStackTrace();
+		}
 		
+		modelLocation = saved;
+		startJournal(modelLocation, false);
 		hasBeenModified = false;
 	}
 
 	/**
+	 * Loads the playlist into a new model in the background.
+	 * <p>
+	 * Tracks are streamed from the file and added to the new model on the event dispatch thread in chunks
+	 * of {@link #LOAD_CHUNK_SIZE}, so the playlist is never held in memory twice; the new model is displayed
+	 * right away, and albums are determined by the model as tracks arrive. Tracks without tags in the
+	 * playlist are tagged from their files using {@link TrackTagger} before being added. Playlists larger than
+	 * {@link Constants#HUGE_PLAYLIST_SIZE} are instead imported directly into a {@link ColumnarTrackList},
+	 * which holds no object per track, and displayed once fully loaded; their tracks are not tagged from files.
+	 * <p>
+	 * In case the playlist has an up-to-date {@link PlaylistSnapshot}, it is read instead of the playlist
+	 * and the model is filled at once, restoring albums as they were when the playlist was saved.
+	 * <p>
+	 * Changes left in the playlist's journal (e.g. by a crash) are replayed on top of the loaded playlist,
+	 * which is then considered modified.
+	 * <p>
+	 * The list is disabled while loading, and the current model remains the one all other operations refer
+	 * to until the new one is complete; in case loading is cancelled or fails, the current model is displayed
+	 * again, as if nothing happened. The returned worker reports the percentage of the file read as its
+	 * progress.
+	 * 
 	 * @param file File which the playlist will be loaded from
-	 * @throws Exception I/O error
+	 * @param onDone Called on the event dispatch thread once loading is over, with the error which has
+	 * occurred; null if the playlist has been loaded, or if loading has been cancelled.
+	 * @return Loader, already started.
 	 */
-	public void loadPlaylist(File file) throws Exception {
-		Playlist p = XMLPlaylistUtils.loadPlaylist(file);
-		
-		model = new PlaylistModel(this);
-		setModel(model);
-		
-		model.setItems(p.getTracklist());
-		determineAlbums();
-		
-		hasBeenModified = false;
-		modelLocation = file;
+	public SwingWorker<?, ?> loadPlaylist(File file, Consumer<Exception> onDone) {
+		PlaylistLoader loader = new PlaylistLoader(file, onDone);
+		loader.execute();
+		return loader;
 	}
 	
 	/**
-	 * Resets the playlist to its initial (empty, non-modified) state.
+	 * Resets the playlist to its initial (empty, non-modified) state, as a new, unsaved playlist.
 	 */
 	public void resetPlaylist() {
+		pendingAlbums.clear();
 		model.reset();
+		modelLocation = null;
+		startJournal(null, false);
 		hasBeenModified = false;
 	}
-
+	
 	/**
-	 * Extracts albums from individual track paths.
+	 * Deletes the journal of the current playlist, e.g. once the user has either saved or discarded
+	 * the changes it holds.
 	 */
-	private void determineAlbums() {
-		for(Track t : model.getItems()) {
-			File track = t.getFile();
-			File parent = track.getParentFile();
-			
-			model.getLoadedAlbums().compute(parent, (k, v) -> {
-				if(v == null)
-					v = new ArrayList<>();
-				v.add(t);
-				return v;
-			});
+	public void discardJournal() {
+		if(journal == null)
+			return;
+		
+		model.setMutationListener(null);
+		try {
+			journal.delete();
+		} catch(IOException e) {
+			e.printStackTrace();
 		}
+		
+		journal = null;
 	}
 	
+	/**
+	 * Replaces the current journal, which is deleted, with the journal of given playlist, and attaches
+	 * it to the model.
+	 * 
+	 * @param location Playlist location; null for an unsaved playlist.
+	 * @param replay Whether the changes held by the journal are to be replayed onto the model; otherwise
+	 * the journal is started anew.
+	 * @return Number of replayed changes.
+	 */
+	private int startJournal(File location, boolean replay) {
+		discardJournal();
+		
+		Path journalLocation = location == null
+				? Paths.get(Constants.UNTITLED_JOURNAL_LOCATION)
+				: PlaylistJournal.locationOf(location);
+		int replayed = 0;
+		
+		try {
+			journal = PlaylistJournal.open(journalLocation, location);
+			
+			if(replay)
+				replayed = journal.replay(model);
+			else
+				journal.restart(location);
+			
+			model.setMutationListener(journal);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		
+		return replayed;
+	}
+
 	/**
 	 * @return Whether this playlist has been modified.
 	 */
@@ -281,5 +370,218 @@ public class JPlaylistComponent extends JList<Track> implements ListDataListener
 	public void contentsChanged(ListDataEvent e) {
 		hasBeenModified = true;
 	}
+	
+	/**
+	 * Scans and tags albums in the background, then adds those of them which are still pending to the model
+	 * the albums were requested for, if it is still current.
+	 */
+	private class AlbumAdder extends SwingWorker<Map<File, List<Track>>, Void> {
+		
+		private final List<File> paths;
+		private final Consumer<Exception> onDone;
+		private final PlaylistModel target;
+		
+		public AlbumAdder(List<File> paths, Consumer<Exception> onDone) {
+			this.paths = paths;
+			this.onDone = onDone;
+			this.target = model;
+		}
+		
+		@Override
+		protected Map<File, List<Track>> doInBackground() throws Exception {
+			List<List<Track>> tracklists = scanner.scan(paths);
+			
+			// tagged all at once, so small albums don't limit parallelism
+			List<Track> tracks = new ArrayList<>();
+			tracklists.forEach(tracks::addAll);
+			Iterator<Track> tagged = tagger.tag(tracks).iterator();
+			tagger.storeCache();
+			
+			Map<File, List<Track>> albums = new LinkedHashMap<>();
+			Iterator<List<Track>> tracklistIterator = tracklists.iterator();
+			for(File p : paths) {
+				int size = tracklistIterator.next().size();
+				List<Track> tracklist = new ArrayList<>(size);
+				for(int i = 0; i < size; i++)
+					tracklist.add(tagged.next());
+				
+				albums.put(p, tracklist);
+			}
+			
+			return albums;
+		}
+		
+		@Override
+		protected void done() {
+			Map<File, List<Track>> albums = null;
+			Exception error = null;
+			
+			try {
+				albums = get();
+			} catch(ExecutionException e) {
+				error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			} catch(InterruptedException | CancellationException e) {
+				error = e;
+			}
+			
+			// albums removed or requested again in the meantime are no longer this worker's to add
+			List<File> owned = new ArrayList<>();
+			for(File album : paths) {
+				if(pendingAlbums.get(album) == this) {
+					pendingAlbums.remove(album);
+					owned.add(album);
+				}
+			}
+			
+			if(albums != null && model == target) {
+				albums.keySet().retainAll(owned);
+				model.putAll(albums);
+			}
+			
+			if(onDone != null)
+				onDone.accept(error);
+		}
+	}
+	
+	/**
+	 * Loads a playlist into a new model, see {@link JPlaylistComponent#loadPlaylist(File, Consumer)}.
+	 */
+	private class PlaylistLoader extends SwingWorker<Void, List<Track>> {
+		
+		private final File file;
+		private final Consumer<Exception> onDone;
+		private final boolean huge;
+		
+		/**
+		 * Model being filled; only notifies the enclosing component of changes once loaded.
+		 */
+		private final PlaylistModel loaded;
+		private ColumnarTrackList columns;
+		
+		/**
+		 * Tracks and album runs read from the snapshot; null if there is no valid snapshot.
+		 */
+		private List<Track> snapshotItems;
+		private List<PlaylistSnapshot.AlbumRun> snapshotRuns;
+		
+		public PlaylistLoader(File file, Consumer<Exception> onDone) {
+			this.file = file;
+			this.onDone = onDone;
+			this.huge = file.length() > Constants.HUGE_PLAYLIST_SIZE;
+			this.loaded = new PlaylistModel(null);
+			
+			setEnabled(false);
+			if(!huge)
+				setModel(loaded);
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Void doInBackground() throws Exception {
+			try {
+				if(readSnapshot())
+					return null;
+				
+				LongConsumer progress = progress(file.length());
+				
+				if(huge) {
+					columns = new ColumnarTrackList();
+					XMLPlaylistUtils.loadPlaylist(file, columns::add, progress);
+				} else {
+					XMLPlaylistUtils.loadPlaylist(file, LOAD_CHUNK_SIZE, chunk -> publish(tagger.tag(chunk)), progress);
+				}
+				
+				return null;
+			} finally {
+				// stored once per load rather than per chunk, including tags read before loading was cancelled
+				tagger.storeCache();
+			}
+		}
+		
+		/**
+		 * @return Whether the tracks have been read from a valid snapshot.
+		 */
+		private boolean readSnapshot() {
+			List<Track> items = huge ? new ColumnarTrackList() : new ArrayList<>();
+			
+			try {
+				snapshotRuns = PlaylistSnapshot.read(file, items,
+						progress(PlaylistSnapshot.locationOf(file).toFile().length()));
+			} catch(IOException e) {
+				// corrupt snapshot, the playlist is parsed instead
+				snapshotRuns = null;
+			}
+			
+			if(snapshotRuns == null)
+				return false;
+			
+			snapshotItems = huge ? items : new ArrayList<>(tagger.tag(items));
+			return true;
+		}
+		
+		/**
+		 * @return Callback reporting the number of bytes read out of given total as progress, which aborts
+		 * loading once cancelled.
+		 */
+		private LongConsumer progress(long total) {
+			long length = Math.max(1, total);
+			
+			return bytes -> {
+				if(isCancelled())
+					throw new CancellationException();
+				
+				setProgress((int) Math.min(100, bytes * 100 / length));
+			};
+		}
+		
+		@Override
+		protected void process(List<List<Track>> chunks) {
+			if(!isCancelled())
+				loaded.batch(() -> chunks.forEach(loaded::addAll));
+		}
+		
+		@Override
+		protected void done() {
+			Exception error = null;
+			boolean success = false;
+			
+			try {
+				get();
+				success = true;
+			} catch(CancellationException ignore) {
+			} catch(ExecutionException e) {
+				error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			} catch(InterruptedException e) {
+				error = e;
+			}
+			
+			if(success) {
+				if(snapshotItems != null)
+					loaded.setItems(snapshotItems, snapshotRuns);
+				else if(huge)
+					loaded.setItems(columns);
+				
+				PlaylistModel previous = model;
+				model = loaded;
+				pendingAlbums.clear();
+				model.addListDataListener(JPlaylistComponent.this);
+				modelLocation = file;
+				hasBeenModified = false;
+				
+				// model events are delivered later on the EDT, so only reset the flag once they have been
+				model.invokeAfterEvents(() -> hasBeenModified = false);
+				
+				previous.setMutationListener(null);
+				if(startJournal(file, true) > 0)
+					model.invokeAfterEvents(() -> hasBeenModified = true);
+			}
+			
+			setModel(model);
+			setEnabled(true);
+			
+			if(onDone != null)
+				onDone.accept(error);
+		}
+	}
 
 }
@@ -1,19 +1,27 @@
 package co.kukurin.gui.main;
 
+import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.io.IOException;
 
 import javax.swing.JFileChooser;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import co.kukurin.gui.actions.DefaultMenuAction;
+import co.kukurin.gui.albummanager.SearchPipeline;
 import co.kukurin.gui.inputscreen.InputScreenWindow;
 import co.kukurin.utils.Constants;
+import co.kukurin.utils.LatencyMetric;
 import co.kukurin.utils.PropertyManager;
+import co.kukurin.utils.profiling.EdtWatchdog;
 
 @SuppressWarnings("serial")
 public class MainMenuFactory {
@@ -23,6 +31,9 @@ public class MainMenuFactory {
 	 */
 	private MainMenuFactory() {}
 	
+	private static final FileNameExtensionFilter VLC_FILENAME_FILTER
+		= new FileNameExtensionFilter("VLC Playlist files (.xspf)", "xspf");
+	
 	/**
 	 * Helper functional interface for cleaner code.
 	 * @author Toni Kukurin
@@ -66,9 +77,9 @@ public class MainMenuFactory {
 		createAndAdd("New", "ctrl N", e -> {
 			int save = caller.queryFileSaveIfNecessary();
 			
-			if(save == JOptionPane.YES_OPTION)
-				displaySaveFileDialog(caller);
-			else if(save == JOptionPane.CANCEL_OPTION)
+			if(save == JOptionPane.CANCEL_OPTION)
+				return;
+			else if(save == JOptionPane.YES_OPTION && !displaySaveFileDialog(caller))
 				return;
 			
 			caller.newPlaylist();
@@ -77,13 +88,13 @@ public class MainMenuFactory {
 		createAndAdd("Open", "ctrl O", e -> {
 			int save = caller.queryFileSaveIfNecessary();
 			
-			if(save == JOptionPane.YES_OPTION)
-				displaySaveFileDialog(caller);
-			else if(save == JOptionPane.CANCEL_OPTION)
+			if(save == JOptionPane.CANCEL_OPTION)
+				return;
+			else if(save == JOptionPane.YES_OPTION && !displaySaveFileDialog(caller))
 				return;
 			
 			JFileChooser chooser = new JFileChooser(PropertyManager.get(Constants.PROPERTY_OPEN_LOCATION));
-			chooser.setFileFilter(Constants.VLC_FILENAME_FILTER);
+			chooser.setFileFilter(VLC_FILENAME_FILTER);
 			int result = chooser.showOpenDialog(caller);
 			
 			if(result != JFileChooser.APPROVE_OPTION)
@@ -109,7 +120,13 @@ public class MainMenuFactory {
 		return file;
 	}
 
-	public static void displaySaveFileDialog(MainWindow caller) {
+	/**
+	 * Lets the user choose a location and saves the current playlist there.
+	 * 
+	 * @param caller
+	 * @return Whether the playlist has been saved; false if the dialog was cancelled or saving failed.
+	 */
+	public static boolean displaySaveFileDialog(MainWindow caller) {
 		String saveLoc = PropertyManager.get(Constants.PROPERTY_SAVE_LOCATION);
 		File openLoc = caller.getCurrentOpenFileLocation();
 		
@@ -117,11 +134,11 @@ public class MainMenuFactory {
 			saveLoc = openLoc.getAbsolutePath();
 		
 		JFileChooser chooser = new JFileChooser(saveLoc);
-		chooser.setFileFilter(Constants.VLC_FILENAME_FILTER);
+		chooser.setFileFilter(VLC_FILENAME_FILTER);
 		int result = chooser.showSaveDialog(caller);
 		
 		if(result != JFileChooser.APPROVE_OPTION)
-			return;
+			return false;
 		
 		File selected = chooser.getSelectedFile();
 		if(selected.exists()) {
@@ -129,10 +146,10 @@ public class MainMenuFactory {
 					"File exists", JOptionPane.YES_NO_OPTION);
 
 			if(result2 == JOptionPane.NO_OPTION)
-				displaySaveFileDialog(caller);
+				return displaySaveFileDialog(caller);
 		}
 		
-		caller.storeCurrentPlaylist(selected);
+		return caller.storeCurrentPlaylist(selected);
 	}
 	
 	/**
@@ -172,6 +189,61 @@ public class MainMenuFactory {
 			SwingUtilities.invokeLater(() -> new InputScreenWindow().setLocationRelativeTo(caller));
 		});
 		
+		properties.addSeparator();
+		
+		createAndAdd("Show stall report", "", e -> {
+			EdtWatchdog watchdog = EdtWatchdog.getInstance();
+			if(watchdog == null) {
+				JOptionPane.showMessageDialog(caller, "Stall detection is not running.");
+				return;
+			}
+			
+			JTextArea report = new JTextArea(watchdog.getReport(), 24, 80);
+			report.setEditable(false);
+			report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+			report.setCaretPosition(0);
+			
+			Object[] options = { "Close", "Reset" };
+			int result = JOptionPane.showOptionDialog(caller, new JScrollPane(report), "Stall report",
+					JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+			
+			if(result == 1)
+				watchdog.reset();
+		});
+		
+		createAndAdd("Dump stall report", "", e -> {
+			EdtWatchdog watchdog = EdtWatchdog.getInstance();
+			if(watchdog == null) {
+				JOptionPane.showMessageDialog(caller, "Stall detection is not running.");
+				return;
+			}
+			
+			JFileChooser chooser = new JFileChooser(PropertyManager.get(Constants.PROPERTY_SAVE_LOCATION));
+			chooser.setSelectedFile(new File("stalls.txt"));
+			
+			if(chooser.showSaveDialog(caller) != JFileChooser.APPROVE_OPTION)
+				return;
+			
+			try {
+				watchdog.dump(chooser.getSelectedFile());
+			} catch(IOException ex) {
+				JOptionPane.showMessageDialog(caller, "Error writing stall report: " + ex);
+			}
+		});
+		
+		properties.addSeparator();
+		
+		createAndAdd("Show search latency", "", e -> {
+			LatencyMetric latency = SearchPipeline.getLatency();
+			
+			Object[] options = { "Close", "Reset" };
+			int result = JOptionPane.showOptionDialog(caller, latency.toString(), "Search latency",
+					JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+			
+			if(result == 1)
+				latency.reset();
+		});
+		
 		return properties;
 	}
 	
@@ -11,11 +11,16 @@ import java.io.IOException;
 import java.util.Collection;
 
 import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenuBar;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 import co.kukurin.gui.albummanager.AlbumManagerWindow;
 import co.kukurin.utils.Constants;
@@ -37,6 +42,15 @@ public class MainWindow extends JFrame {
 	
 	private JPlaylistComponent playlist;
 	
+	private JPanel loadingPanel;
+	private JLabel loadingLabel;
+	private JProgressBar loadingProgress;
+	
+	/**
+	 * Playlist loader currently running; null if none.
+	 */
+	private SwingWorker<?, ?> loader;
+	
 	private WindowAdapter checkForSaveOnClose = new WindowAdapter() {
 		@Override
 		public void windowClosing(WindowEvent e) {
@@ -44,8 +58,17 @@ public class MainWindow extends JFrame {
 			
 			if(result == JOptionPane.CANCEL_OPTION)
 				return;
-			else if(result == JOptionPane.YES_OPTION)
-				MainMenuFactory.displaySaveFileDialog(MainWindow.this);
+			
+			// the window stays open if saving was cancelled or failed, keeping changes and their journal
+			if(result == JOptionPane.YES_OPTION && !MainMenuFactory.displaySaveFileDialog(MainWindow.this))
+				return;
+			
+			if(loader != null)
+				loader.cancel(false);
+			
+			// a saved playlist's journal has been restarted when saving; otherwise, changes are discarded
+			if(result != JOptionPane.YES_OPTION)
+				playlist.discardJournal();
 			
 			MainWindow.this.dispose();
 		}
@@ -80,6 +103,23 @@ public class MainWindow extends JFrame {
 				SwingUtils.defaultMargin(SwingUtilities.LEFT, SwingUtilities.RIGHT, SwingUtilities.BOTTOM),
 				SwingUtils.defaultLineBorder()));
 		add(playlistWrap, BorderLayout.CENTER);
+		
+		loadingLabel = new JLabel();
+		loadingProgress = new JProgressBar(0, 100);
+		JButton cancelBtn = new JButton("Cancel");
+		cancelBtn.addActionListener(e -> {
+			if(loader != null)
+				loader.cancel(false);
+		});
+		
+		loadingPanel = new JPanel(new BorderLayout(10, 0));
+		loadingPanel.setBorder(SwingUtils.defaultMargin(SwingUtilities.LEFT, SwingUtilities.RIGHT,
+				SwingUtilities.BOTTOM));
+		loadingPanel.add(loadingLabel, BorderLayout.WEST);
+		loadingPanel.add(loadingProgress, BorderLayout.CENTER);
+		loadingPanel.add(cancelBtn, BorderLayout.EAST);
+		loadingPanel.setVisible(false);
+		add(loadingPanel, BorderLayout.SOUTH);
 	}
 	
 	private void initListeners() {
@@ -98,11 +138,10 @@ public class MainWindow extends JFrame {
 	 * @param file
 	 */
 	public void addAlbum(File file) {
-		try {
-			playlist.addAlbum(file);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		playlist.addAlbum(file, e -> {
+			if(e != null)
+				e.printStackTrace();
+		});
 	}
 	
 	/**
@@ -118,12 +157,12 @@ public class MainWindow extends JFrame {
 	 * @param albums
 	 */
 	public void updateAlbumList(Collection<File> albums) {
-		try {
-			playlist.updateAlbums(albums);
-		} catch (Exception e) {
-			e.printStackTrace();
-			displayMessage("Error updating albums: " + e.toString());
-		}
+		playlist.updateAlbums(albums, e -> {
+			if(e != null) {
+				e.printStackTrace();
+				displayMessage("Error updating albums: " + e.toString());
+			}
+		});
 	}
 
 	/**
@@ -153,25 +192,54 @@ public class MainWindow extends JFrame {
 	
 	/**
 	 * Tries to open playlist from existing.
+	 * <p>
+	 * The playlist is loaded in the background, showing the progress along with an option to cancel;
+	 * menus are disabled until loading is over.
 	 * @param f
 	 */
 	public void openPlaylist(File f) {
-		try {
-			playlist.loadPlaylist(f);
-		} catch (Exception e) {
-			displayMessage("Error opening playlist: " + e);
-		}
+		if(loader != null)
+			return;
+		
+		loader = playlist.loadPlaylist(f, error -> {
+			loader = null;
+			setLoading(false);
+			
+			if(error != null)
+				displayMessage("Error opening playlist: " + error);
+		});
+		
+		loader.addPropertyChangeListener(e -> {
+			if("progress".equals(e.getPropertyName()))
+				loadingProgress.setValue((Integer) e.getNewValue());
+		});
+		
+		loadingLabel.setText("Loading " + f.getName());
+		loadingProgress.setValue(0);
+		setLoading(true);
+	}
+	
+	private void setLoading(boolean loading) {
+		JMenuBar menuBar = getJMenuBar();
+		for(int i = 0; i < menuBar.getMenuCount(); i++)
+			menuBar.getMenu(i).setEnabled(!loading);
+		
+		loadingPanel.setVisible(loading);
+		revalidate();
 	}
 
 	/**
 	 * Storest current playlist to given location.
 	 * @param f
+	 * @return Whether the playlist has been stored; an error is displayed otherwise.
 	 */
-	public void storeCurrentPlaylist(File f) {
+	public boolean storeCurrentPlaylist(File f) {
 		try {
 			playlist.storePlaylist(f.toPath());
+			return true;
 		} catch (Exception e) {
 			displayMessage("Error writing playlist: " + e);
+			return false;
 		}
 	}
 	
@@ -1,14 +1,35 @@
 package co.kukurin.gui.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.AbstractListModel;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ListDataEvent;
+
+import co.kukurin.utils.profiling.FlightRecording;
+import co.kukurin.utils.profiling.ModelMutationEvent;
 
 /**
  * A list model which offers the default Collection add/remove methods with corresponding listener invocations.
+ * <p>
+ * Listeners are notified on the event dispatch thread. Changes made between {@link #beginBatch()} and
+ * {@link #endBatch()} (or within {@link #batch(Runnable)}) are merged into as few index intervals as possible,
+ * and listeners receive at most one event of each type per batch; a change outside of a batch is a batch of
+ * its own. Additionally, with a coalescing interval set (see {@link #setCoalescingInterval(int)}), events of
+ * all batches made within the same interval are merged together, capping the frequency at which listening
+ * components are updated.
+ * <p>
+ * Removing many elements at once should go through {@link #removeIndices(int[])} (or
+ * {@link #removeAll(Collection)}) rather than repeated calls to {@link #remove(Object)}, each of which scans
+ * the list for the element and shifts all following ones.
+ * <p>
+ * Bulk additions and removals are reported to the flight recorder as {@link ModelMutationEvent}s.
  * 
  * @author Toni Kukurin
  * @param <E>
@@ -16,10 +37,33 @@ import javax.swing.SwingUtilities;
 @SuppressWarnings("serial")
 public class UpdateableListModel<E> extends AbstractListModel<E> {
 
+	/**
+	 * Coalescing interval corresponding to roughly one frame at 60Hz.
+	 */
+	public static final int FRAME_MILLIS = 16;
+	
 	protected List<E> items;
 	
+	private int batchDepth;
+	private List<ListDataEvent> batchEvents;
+	private boolean batchAdded;
+	private boolean batchRemoved;
+	
+	/**
+	 * Guards {@link #frameEvents}, {@link #frameStartSize} and {@link #frameCallbacks}, which are filled by
+	 * the modifying thread and emptied on the event dispatch thread.
+	 */
+	private final Object frameLock = new Object();
+	private Timer frameTimer;
+	private List<ListDataEvent> frameEvents;
+	private int frameStartSize;
+	private List<Runnable> frameCallbacks;
+	
 	public UpdateableListModel() {
 		this.items = new ArrayList<>();
+		this.batchEvents = new ArrayList<>();
+		this.frameEvents = new ArrayList<>();
+		this.frameCallbacks = new ArrayList<>();
 	}
 	
 	@Override
@@ -39,13 +83,22 @@ public class UpdateableListModel<E> extends AbstractListModel<E> {
 	 * @return Same as {@link Collection#addAll(Collection)}
 	 */
 	public boolean addAll(Collection<E> items) {
+		ModelMutationEvent event = FlightRecording.isActive() ? new ModelMutationEvent() : null;
+		if(event != null)
+			event.begin();
+		
 		int oldsiz = this.items.size();
 		boolean result = this.items.addAll(items);
 		
-		if(result)
-			SwingUtilities.invokeLater(() -> fireIntervalAdded(this, oldsiz, this.items.size() - 1));
+		if(result) {
+			record(ListDataEvent.INTERVAL_ADDED, oldsiz, this.items.size() - 1);
+			
+			if(event != null) {
+				event.added = this.items.size() - oldsiz;
+				commit(event, ModelMutationEvent.ADD);
+			}
+		}
 		
-		addCallback();
 		return result;
 	}
 	
@@ -58,34 +111,45 @@ public class UpdateableListModel<E> extends AbstractListModel<E> {
 	public boolean add(E item) {
 		boolean val = items.add(item);
 		
-		if(val)
-			SwingUtilities.invokeLater(() -> fireIntervalAdded(this, items.size() - 1, items.size() - 1));
+		if(val) {
+			record(ListDataEvent.INTERVAL_ADDED, items.size() - 1, items.size() - 1);
+		}
 		
-		addCallback();
 		return val;
 	}
 	
 	/**
 	 * Removes all elements from internal collection which are also in given collection.
+	 * <p>
+	 * Elements are removed in a single pass, and each run of consecutive removed elements is
+	 * reported as a removed interval.
 	 * 
 	 * @param items Items to be removed.
 	 * @return Same as {@link List#removeAll(Collection)}
 	 */
 	public boolean removeAll(Collection<E> items) {
-		boolean result = this.items.removeAll(items);
+		Set<E> toRemove = items instanceof Set ? (Set<E>) items : new HashSet<>(items);
+		List<int[]> ranges = new ArrayList<>();
+		int rangeStart = -1;
 		
-		if(result) {
-			int endIndexModified = this.items.size() - 1;
-			
-			if(endIndexModified < 0)
-				endIndexModified = 0;
-			
-			final int endIndex = endIndexModified;
-			SwingUtilities.invokeLater(() -> fireContentsChanged(this, 0, endIndex));
+		for(int i = 0; i < this.items.size(); i++) {
+			if(toRemove.contains(this.items.get(i))) {
+				if(rangeStart < 0)
+					rangeStart = i;
+			} else if(rangeStart >= 0) {
+				ranges.add(new int[] { rangeStart, i - 1 });
+				rangeStart = -1;
+			}
 		}
 		
-		removeCallback();
-		return result;
+		if(rangeStart >= 0)
+			ranges.add(new int[] { rangeStart, this.items.size() - 1 });
+		
+		if(ranges.isEmpty())
+			return false;
+		
+		removeRanges(ranges);
+		return true;
 	}
 	
 	/**
@@ -95,14 +159,20 @@ public class UpdateableListModel<E> extends AbstractListModel<E> {
 	 * @return True if item has been found and will be removed; false otherwise.
 	 */
 	public boolean remove(E item) {
-		for(int i = 0; i < items.size(); i++) {
-			if(items.get(i).equals(item)) {
-				remove(i);
-				return true;
-			}
-		}
+		int i = indexOf(item);
 		
-		return false;
+		if(i >= 0)
+			remove(i);
+		
+		return i >= 0;
+	}
+	
+	/**
+	 * @param item Item to look for.
+	 * @return Position of the first occurrence of given item; -1 if not found.
+	 */
+	public int indexOf(E item) {
+		return items.indexOf(item);
 	}
 	
 	/**
@@ -113,14 +183,192 @@ public class UpdateableListModel<E> extends AbstractListModel<E> {
 	 */
 	public E remove(int i) {
 		E val = items.remove(i);
-		SwingUtilities.invokeLater(() -> fireIntervalRemoved(this, i, i));
-		removeCallback();
+		record(ListDataEvent.INTERVAL_REMOVED, i, i);
 		
 		return val;
 	}
 	
 	/**
-	 * Method called after a given remove/removeAll invocation.
+	 * Removes items at given indices, compacting the list in a single pass; listeners are notified of
+	 * one removed interval per run of consecutive indices.
+	 * 
+	 * @param indices Indices which are to be removed, in any order.
+	 */
+	public void removeIndices(int[] indices) {
+		if(indices.length == 0)
+			return;
+		
+		int[] sorted = indices.clone();
+		Arrays.sort(sorted);
+		
+		List<int[]> ranges = new ArrayList<>();
+		int[] range = { sorted[0], sorted[0] };
+		
+		for(int i = 1; i < sorted.length; i++) {
+			if(sorted[i] <= range[1] + 1) {
+				range[1] = Math.max(range[1], sorted[i]);
+			} else {
+				ranges.add(range);
+				range = new int[] { sorted[i], sorted[i] };
+			}
+		}
+		ranges.add(range);
+		
+		removeRanges(ranges);
+	}
+	
+	/**
+	 * Removes given index ranges, moving the remaining elements in a single pass over the part of the
+	 * list following the first range (see {@link #removeItems(List)}). Listeners are notified of one
+	 * removed interval per range.
+	 * <p>
+	 * Subclasses keeping additional bookkeeping over positions should override this method, as all
+	 * bulk removals go through it.
+	 * 
+	 * @param ranges Disjoint, inclusive {start, end} index ranges, in increasing order.
+	 */
+	protected void removeRanges(List<int[]> ranges) {
+		ModelMutationEvent event = FlightRecording.isActive() ? new ModelMutationEvent() : null;
+		if(event != null)
+			event.begin();
+		
+		int oldsiz = items.size();
+		removeItems(ranges);
+		
+		beginBatch();
+		int removed = 0;
+		for(int[] range : ranges) {
+			// each interval is given relative to the list with the previous ranges already removed
+			record(ListDataEvent.INTERVAL_REMOVED, range[0] - removed, range[1] - removed);
+			removed += range[1] - range[0] + 1;
+		}
+		endBatch();
+		
+		if(event != null) {
+			event.removed = oldsiz - items.size();
+			event.ranges = ranges.size();
+			commit(event, ModelMutationEvent.REMOVE);
+		}
+	}
+	
+	/**
+	 * Removes elements within given ranges from {@link #items}, without notifying listeners; may be
+	 * overridden for lists offering a more efficient way of doing so.
+	 * 
+	 * @param ranges Disjoint, inclusive {start, end} index ranges, in increasing order.
+	 */
+	protected void removeItems(List<int[]> ranges) {
+		int write = ranges.get(0)[0];
+		
+		for(int r = 0; r < ranges.size(); r++) {
+			int keptEnd = r + 1 < ranges.size() ? ranges.get(r + 1)[0] : items.size();
+			
+			for(int read = ranges.get(r)[1] + 1; read < keptEnd; read++)
+				items.set(write++, items.get(read));
+		}
+		
+		items.subList(write, items.size()).clear();
+	}
+	
+	/**
+	 * Runs given changes as a single batch; see {@link #beginBatch()}.
+	 * 
+	 * @param changes Changes to be made to this model.
+	 */
+	public void batch(Runnable changes) {
+		beginBatch();
+		
+		try {
+			changes.run();
+		} finally {
+			endBatch();
+		}
+	}
+	
+	/**
+	 * Starts a batch of changes; listeners are only notified once the matching {@link #endBatch()} has
+	 * been called. Batches may be nested, in which case the outermost batch counts.
+	 * <p>
+	 * Adjacent changes of the same type are merged into a single interval. In case a type of change
+	 * still spans more than one interval, listeners are instead notified of a single changed interval
+	 * covering all changes, followed by a single added or removed interval accounting for the change
+	 * in size.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+	
+	/**
+	 * Ends a batch of changes started by {@link #beginBatch()}.
+	 */
+	public void endBatch() {
+		if(batchDepth == 0)
+			throw new IllegalStateException("No batch in progress!");
+		
+		if(--batchDepth > 0)
+			return;
+		
+		List<ListDataEvent> events = batchEvents;
+		batchEvents = new ArrayList<>();
+		
+		if(batchAdded)
+			addCallback();
+		if(batchRemoved)
+			removeCallback();
+		batchAdded = batchRemoved = false;
+		
+		if(!events.isEmpty())
+			deliver(events, items.size() - sizeDelta(events));
+	}
+	
+	/**
+	 * Sets the interval in which events of consecutive batches are merged together.
+	 * 
+	 * @param millis Coalescing interval in milliseconds, e.g. {@link #FRAME_MILLIS}; 0 to notify listeners
+	 * after each batch.
+	 */
+	public void setCoalescingInterval(int millis) {
+		if(millis < 0)
+			throw new IllegalArgumentException("Coalescing interval must not be negative!");
+		
+		synchronized(frameLock) {
+			if(frameTimer != null)
+				frameTimer.stop();
+			
+			if(millis == 0) {
+				frameTimer = null;
+				
+				if(!frameEvents.isEmpty() || !frameCallbacks.isEmpty())
+					SwingUtilities.invokeLater(this::fireFrame);
+			} else {
+				frameTimer = new Timer(millis, e -> fireFrame());
+				frameTimer.setRepeats(false);
+				
+				if(!frameEvents.isEmpty() || !frameCallbacks.isEmpty())
+					frameTimer.start();
+			}
+		}
+	}
+	
+	/**
+	 * Runs given action on the event dispatch thread once listeners have been notified of all changes
+	 * made thus far.
+	 * 
+	 * @param action Action to be run.
+	 */
+	public void invokeAfterEvents(Runnable action) {
+		synchronized(frameLock) {
+			if(frameTimer != null && frameTimer.isRunning()) {
+				frameCallbacks.add(action);
+				return;
+			}
+		}
+		
+		SwingUtilities.invokeLater(action);
+	}
+	
+	/**
+	 * Method called after a given remove/removeAll invocation, or after a batch containing removals.
 	 * <p>
 	 * Does nothing by default, its purpose is to be overridden if necessary to provide internal callbacks
 	 * after each content change.
@@ -128,11 +376,185 @@ public class UpdateableListModel<E> extends AbstractListModel<E> {
 	protected void removeCallback() {}
 	
 	/**
-	 * Method called after a given add/addAll invocation.
+	 * Method called after a given add/addAll invocation, or after a batch containing additions.
 	 * <p>
 	 * Does nothing by default, its purpose is to be overridden if necessary to provide internal callbacks
 	 * after each content change.
 	 */
 	protected void addCallback() {}
 
+	/**
+	 * Records a change made to {@link #items}; listeners are notified once the current batch has ended.
+	 * 
+	 * @param type One of {@link ListDataEvent}'s types.
+	 * @param index0 Start of the changed interval, relative to the list before this change.
+	 * @param index1 End of the changed interval (inclusive).
+	 */
+	protected void record(int type, int index0, int index1) {
+		beginBatch();
+		
+		batchEvents.add(new ListDataEvent(this, type, index0, index1));
+		batchAdded |= type == ListDataEvent.INTERVAL_ADDED;
+		batchRemoved |= type == ListDataEvent.INTERVAL_REMOVED;
+		
+		endBatch();
+	}
+	
+	/**
+	 * Fills in the fields common to all mutations and commits given event.
+	 */
+	private void commit(ModelMutationEvent event, String operation) {
+		if(!event.shouldCommit())
+			return;
+		
+		event.model = getClass();
+		event.operation = operation;
+		event.size = items.size();
+		event.commit();
+	}
+	
+	private void deliver(List<ListDataEvent> events, int startSize) {
+		synchronized(frameLock) {
+			if(frameTimer != null) {
+				if(frameEvents.isEmpty())
+					frameStartSize = startSize;
+				frameEvents.addAll(events);
+				
+				if(!frameTimer.isRunning())
+					frameTimer.start();
+				return;
+			}
+		}
+		
+		List<ListDataEvent> merged = merge(events, startSize);
+		SwingUtilities.invokeLater(() -> fire(merged));
+	}
+	
+	private void fireFrame() {
+		List<ListDataEvent> events;
+		List<Runnable> callbacks;
+		int startSize;
+		
+		synchronized(frameLock) {
+			events = frameEvents;
+			callbacks = frameCallbacks;
+			startSize = frameStartSize;
+			
+			frameEvents = new ArrayList<>();
+			frameCallbacks = new ArrayList<>();
+		}
+		
+		if(!events.isEmpty())
+			fire(merge(events, startSize));
+		callbacks.forEach(Runnable::run);
+	}
+	
+	private void fire(List<ListDataEvent> events) {
+		for(ListDataEvent e : events) {
+			switch(e.getType()) {
+			case ListDataEvent.INTERVAL_ADDED:
+				fireIntervalAdded(this, e.getIndex0(), e.getIndex1());
+				break;
+			case ListDataEvent.INTERVAL_REMOVED:
+				fireIntervalRemoved(this, e.getIndex0(), e.getIndex1());
+				break;
+			default:
+				fireContentsChanged(this, e.getIndex0(), e.getIndex1());
+			}
+		}
+	}
+	
+	/**
+	 * Merges consecutive events of the same type whose intervals are adjacent or overlapping. In case
+	 * more than one event of any type remains, the events are replaced by a single changed interval,
+	 * followed by a single added or removed interval at the end of the list.
+	 * 
+	 * @param events Events in the order the changes were made.
+	 * @param startSize Size of the list before the first change.
+	 * @return Events to fire.
+	 */
+	private List<ListDataEvent> merge(List<ListDataEvent> events, int startSize) {
+		List<ListDataEvent> merged = new ArrayList<>();
+		
+		for(ListDataEvent e : events) {
+			ListDataEvent last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			ListDataEvent union = last == null ? null : union(last, e);
+			
+			if(union != null)
+				merged.set(merged.size() - 1, union);
+			else
+				merged.add(e);
+		}
+		
+		int[] counts = new int[3];
+		for(ListDataEvent e : merged)
+			counts[e.getType()]++;
+		
+		if(counts[0] <= 1 && counts[1] <= 1 && counts[2] <= 1)
+			return merged;
+		
+		// positions before the lowest index of any change are never affected
+		int low = Integer.MAX_VALUE;
+		for(ListDataEvent e : merged)
+			low = Math.min(low, e.getIndex0());
+		
+		int endSize = startSize + sizeDelta(merged);
+		int commonSize = Math.min(startSize, endSize);
+		List<ListDataEvent> collapsed = new ArrayList<>(2);
+		
+		if(low < commonSize)
+			collapsed.add(new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, low, commonSize - 1));
+		if(endSize > startSize)
+			collapsed.add(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, startSize, endSize - 1));
+		else if(endSize < startSize)
+			collapsed.add(new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, endSize, startSize - 1));
+		
+		return collapsed;
+	}
+	
+	/**
+	 * @param a Earlier event.
+	 * @param b Later event, relative to the list after the earlier change.
+	 * @return Single event equivalent to both, or null if there is none.
+	 */
+	private ListDataEvent union(ListDataEvent a, ListDataEvent b) {
+		if(a.getType() != b.getType())
+			return null;
+		
+		int a0 = a.getIndex0(), a1 = a.getIndex1();
+		int b0 = b.getIndex0(), b1 = b.getIndex1();
+		
+		switch(a.getType()) {
+		case ListDataEvent.INTERVAL_ADDED:
+			// inserted within or right after the earlier interval
+			if(a0 <= b0 && b0 <= a1 + 1)
+				return new ListDataEvent(this, a.getType(), a0, a1 + (b1 - b0 + 1));
+			return null;
+		case ListDataEvent.INTERVAL_REMOVED:
+			// removed interval reaching the position where the earlier one was removed
+			if(b0 <= a0 && a0 <= b1 + 1)
+				return new ListDataEvent(this, a.getType(), b0, b1 + (a1 - a0 + 1));
+			return null;
+		default:
+			if(b0 <= a1 + 1 && a0 <= b1 + 1)
+				return new ListDataEvent(this, a.getType(), Math.min(a0, b0), Math.max(a1, b1));
+			return null;
+		}
+	}
+	
+	private static int sizeDelta(Collection<ListDataEvent> events) {
+		int delta = 0;
+		
+		for(ListDataEvent e : events) {
+			int length = e.getIndex1() - e.getIndex0() + 1;
+			
+			if(e.getType() == ListDataEvent.INTERVAL_ADDED)
+				delta += length;
+			else if(e.getType() == ListDataEvent.INTERVAL_REMOVED)
+				delta -= length;
+		}
+		
+		return delta;
+	}
+
 }
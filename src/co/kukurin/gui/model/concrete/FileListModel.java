@@ -1,16 +1,30 @@
 package co.kukurin.gui.model.concrete;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 import co.kukurin.gui.model.UpdateableListModel;
+import co.kukurin.utils.profiling.FilterEvent;
+import co.kukurin.utils.profiling.FlightRecording;
+import co.kukurin.utils.profiling.ModelMutationEvent;
+import co.kukurin.utils.search.TrigramIndex;
 
 /**
  * Basic {@link ListModel} containing a list of file items and offering basic add/remove options.
  * The model additionally keeps track of an "active set" of items which at any given moment
  * stores a subset of the total list of items. See {@link #updateActiveSet(String)} for more info.
+ * <p>
+ * Filters and changes of the fileset are reported to the flight recorder as {@link FilterEvent}s and
+ * {@link ModelMutationEvent}s respectively.
  * 
  * @author Toni Kukurin
  *
@@ -21,8 +35,92 @@ public class FileListModel extends UpdateableListModel<File> {
 	private List<File> entireFileset;
 	private String lastFilter;
 	
+	/**
+	 * Index over {@link #entireFileset}, used to answer {@link #updateActiveSet(String)} queries.
+	 */
+	private TrigramIndex<File> index;
+	
+	/**
+	 * Results of previous filters, each one a refinement of the one below it; see
+	 * {@link #updateActiveSet(String)}. Cleared whenever the fileset changes.
+	 */
+	private Deque<CachedFilter> history;
+	
+	private static final int MAX_HISTORY = 32;
+	
+	/**
+	 * Guards {@link #index} and {@link #history}, which are also accessed by {@link #computeActiveSet}
+	 * from outside the event dispatch thread.
+	 */
+	private final Object lock = new Object();
+	
+	/**
+	 * Incremented on each change of the fileset; see {@link ActiveSet}.
+	 */
+	private volatile int version;
+	
+	/**
+	 * Result of {@link #computeActiveSet}, to be published using {@link #publishActiveSet(ActiveSet)}.
+	 */
+	public static class ActiveSet {
+		private final String filter;
+		private final List<File> files;
+		private final int version;
+		
+		private ActiveSet(String filter, List<File> files, int version) {
+			this.filter = filter;
+			this.files = files;
+			this.version = version;
+		}
+		
+		public List<File> getFiles() {
+			return files;
+		}
+	}
+	
+	/**
+	 * A single cached filter result.
+	 */
+	private static class CachedFilter {
+		private final String filter;
+		private final String[] tokens;
+		private final int[] ids;
+		private final List<File> files;
+		
+		public CachedFilter(String filter, String[] tokens, int[] ids, List<File> files) {
+			this.filter = filter;
+			this.tokens = tokens;
+			this.ids = ids;
+			this.files = files;
+		}
+		
+		/**
+		 * @return True if every file matching given tokens also matches this result's tokens, i.e. if each
+		 * of this result's tokens is contained within one of the given tokens.
+		 */
+		public boolean isRefinedBy(String[] otherTokens) {
+			for(String token : tokens) {
+				boolean contained = false;
+				
+				for(String other : otherTokens) {
+					if(other.contains(token)) {
+						contained = true;
+						break;
+					}
+				}
+				
+				if(!contained)
+					return false;
+			}
+			
+			return true;
+		}
+	}
+	
 	public FileListModel() {
 		this.entireFileset = this.items;
+		this.index = new TrigramIndex<>();
+		this.history = new ArrayDeque<>();
 		lastFilter = null;
 	}
 	
@@ -34,14 +132,109 @@ public class FileListModel extends UpdateableListModel<File> {
 		return entireFileset;
 	}
 	
-	@Override
-	protected void addCallback() {
+	/**
+	 * Applies a batch of changes to this model, re-applying the last used filter once
+	 * for the entire batch.
+	 * 
+	 * @param added Files to be added.
+	 * @param removed Files to be removed.
+	 */
+	public void update(Collection<File> added, Collection<File> removed) {
+		ModelMutationEvent event = FlightRecording.isActive() ? new ModelMutationEvent() : null;
+		if(event != null)
+			event.begin();
+		
+		synchronized(lock) {
+			history.clear();
+			version++;
+			
+			if(!removed.isEmpty()) {
+				Set<File> toRemove = new HashSet<>(removed);
+				entireFileset.removeIf(toRemove::contains);
+				toRemove.forEach(file -> {
+					while(index.remove(file));
+				});
+			}
+			
+			entireFileset.addAll(added);
+			index.addAll(added);
+		}
+		
 		updateActiveSet(lastFilter);
+		
+		if(event != null) {
+			event.model = getClass();
+			event.operation = ModelMutationEvent.UPDATE;
+			event.added = added.size();
+			event.removed = removed.size();
+			event.size = entireFileset.size();
+			event.commit();
+		}
 	}
 	
+	// all modifications are made on the entire fileset, after which the active set is recalculated
+	
 	@Override
-	protected void removeCallback() {
-		updateActiveSet(lastFilter);
+	public boolean addAll(Collection<File> items) {
+		update(items, Collections.emptyList());
+		return !items.isEmpty();
+	}
+	
+	@Override
+	public boolean add(File item) {
+		return addAll(Collections.singletonList(item));
+	}
+	
+	@Override
+	public boolean removeAll(Collection<File> items) {
+		int oldsiz = entireFileset.size();
+		update(Collections.emptyList(), items);
+		return entireFileset.size() != oldsiz;
+	}
+	
+	@Override
+	public boolean remove(File item) {
+		boolean result;
+		
+		synchronized(lock) {
+			result = entireFileset.remove(item);
+			
+			if(result) {
+				history.clear();
+				version++;
+				index.remove(item);
+			}
+		}
+		
+		if(result)
+			updateActiveSet(lastFilter);
+		
+		return result;
+	}
+	
+	/**
+	 * Removes item at given index of the active set.
+	 * 
+	 * @param i Index which is to be removed.
+	 * @return Removed item.
+	 */
+	@Override
+	public File remove(int i) {
+		File val = items.get(i);
+		remove(val);
+		return val;
+	}
+	
+	/**
+	 * Removes items within given ranges of the active set.
+	 */
+	@Override
+	protected void removeRanges(List<int[]> ranges) {
+		List<File> toRemove = new ArrayList<>();
+		for(int[] range : ranges)
+			toRemove.addAll(items.subList(range[0], range[1] + 1));
+		
+		removeAll(toRemove);
 	}
 	
 	/**
@@ -49,35 +242,105 @@ public class FileListModel extends UpdateableListModel<File> {
 	 * tokens are extracted using blank space as the default separator, and
 	 * then logically AND-ed with each file in storage (i.e., the filepath
 	 * must contain all of the given tokens for it to be included in the active set).
+	 * <p>
+	 * Candidates are looked up in a {@link TrigramIndex}, so only files sharing all trigrams
+	 * of the given tokens are checked. In case the string refines one of the previously used filters
+	 * (e.g. a character has been typed), only that filter's result is checked instead, and returning
+	 * to a previously used filter (e.g. by deleting a character) reuses its cached result.
 	 * 
 	 * @param s String to be checked against
 	 */
 	public void updateActiveSet(String s) {
-		if(s == null || s.isEmpty()) {
-			this.items = this.entireFileset;
-		} else {
+		publishActiveSet(computeActiveSet(s, () -> false));
+	}
+	
+	/**
+	 * Computes the active set for given string as described in {@link #updateActiveSet(String)}, without
+	 * changing the model; may be called from any thread.
+	 * 
+	 * @param s String to be checked against
+	 * @param cancelled Returns true once the result is no longer needed.
+	 * @return Active set which can be published using {@link #publishActiveSet(ActiveSet)}.
+	 * @throws CancellationException In case the computation has been cancelled.
+	 */
+	public ActiveSet computeActiveSet(String s, BooleanSupplier cancelled) {
+		synchronized(lock) {
+			if(s == null || s.isEmpty()) {
+				history.clear();
+				return new ActiveSet(s, entireFileset, version);
+			}
+			
 			s = s.toLowerCase();
-			final String[] tokens = s.split("\\s+");
 			
-			this.items = new ArrayList<>();
-			entireFileset.forEach(file -> {
-				boolean matching = true;
-				String lowercaseFilename = file.toString().toLowerCase();
-				
-				for(String token : tokens) {
-					if(!lowercaseFilename.contains(token)) {
-						matching = false;
-						break;
-					}
-				}
-				
-				if(matching)
-					items.add(file);
-			});
+			FilterEvent event = FlightRecording.isActive() ? new FilterEvent() : null;
+			if(event != null) {
+				event.begin();
+				event.query = s;
+				event.inputSize = entireFileset.size();
+			}
+			
+			try {
+				List<File> files = filter(s, cancelled);
+				if(event != null)
+					event.resultSize = files.size();
+				return new ActiveSet(s, files, version);
+			} catch(CancellationException e) {
+				if(event != null)
+					event.cancelled = true;
+				throw e;
+			} finally {
+				if(event != null)
+					event.commit();
+			}
 		}
+	}
+	
+	/**
+	 * Makes given active set current, notifying listeners with a single event, unless the fileset has
+	 * been changed since the set was computed.
+	 * <p>
+	 * Should only be called from the event dispatch thread.
+	 * 
+	 * @param activeSet Active set computed by {@link #computeActiveSet(String, BooleanSupplier)}.
+	 * @return Whether the set has been made current; false if it is outdated, and has to be computed again.
+	 */
+	public boolean publishActiveSet(ActiveSet activeSet) {
+		if(activeSet.version != version)
+			return false;
 		
-		lastFilter = s;
+		this.items = activeSet.files;
+		lastFilter = activeSet.filter;
 		fireContentsChanged(this, 0, entireFileset.size() - 1);
+		return true;
+	}
+	
+	private List<File> filter(String s, BooleanSupplier cancelled) {
+		final String[] tokens = s.split("\\s+");
+		final String normalized = String.join(" ", tokens);
+		
+		// returning to a previous filter
+		for(CachedFilter cached : history) {
+			if(cached.filter.equals(normalized)) {
+				while(history.peek() != cached)
+					history.pop();
+				return cached.files;
+			}
+		}
+		
+		// drop cached results which given filter doesn't refine
+		while(!history.isEmpty() && !history.peek().isRefinedBy(tokens))
+			history.pop();
+		
+		int[] ids = history.isEmpty()
+				? index.queryIds(tokens, cancelled)
+				: index.filterIds(history.peek().ids, tokens, cancelled);
+		List<File> files = index.getElements(ids);
+		
+		if(history.size() == MAX_HISTORY)
+			history.removeLast();
+		history.push(new CachedFilter(normalized, tokens, ids, files));
+		
+		return files;
 	}
 
 }
@@ -0,0 +1,470 @@
+package co.kukurin.gui.model.concrete;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import co.kukurin.metadata.TrackMetadata;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Append-only journal of changes made to a {@link PlaylistModel} since its playlist was last saved.
+ * <p>
+ * The journal is attached to a model as its {@link PlaylistModel.MutationListener}, and records each added
+ * album, each batch of added tracks, each removal of index ranges and each reset as a record of a few bytes
+ * per change (plus the locations of added tracks). Records are buffered in memory and written to disk in
+ * batches by a background thread, every {@link #FLUSH_MILLIS} or as soon as {@link #MAX_PENDING_BYTES} have
+ * accumulated, each batch followed by a single <code>fsync</code>.
+ * <p>
+ * The journal header identifies the saved playlist it applies to by its length and modification time, so
+ * a journal is only replayed on top of the exact file it was started from (see {@link #open(Path, File)});
+ * saving the playlist restarts the journal. Each record carries its length and a CRC32 checksum, so a record
+ * torn by a crash is detected, and the journal is cut right before it on replay.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class PlaylistJournal implements PlaylistModel.MutationListener {
+	
+	/**
+	 * Maximum interval in which buffered records are written to disk.
+	 */
+	public static final long FLUSH_MILLIS = 1000;
+	
+	/**
+	 * Amount of buffered records above which they are written to disk right away.
+	 */
+	public static final int MAX_PENDING_BYTES = 1 << 16;
+	
+	/**
+	 * Suffix of the journal of a saved playlist, appended to the playlist location.
+	 */
+	public static final String SUFFIX = ".journal";
+	
+	private static final int MAGIC = 0x504A524E;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 4 + 4 + 8 + 8;
+	private static final int RECORD_HEADER_LENGTH = 4 + 4;
+	
+	private static final byte ADD_ALBUM = 1;
+	private static final byte ADD_TRACKS = 2;
+	private static final byte REMOVE_RANGES = 3;
+	private static final byte CLEAR = 4;
+	
+	private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "playlist-journal");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private final Path location;
+	private final FileChannel channel;
+	
+	/**
+	 * Guards all access to {@link #channel}. Always taken before the journal's own monitor, which only
+	 * guards buffered records, so that appending a record never waits for records being written to disk.
+	 */
+	private final Object channelLock = new Object();
+	
+	/**
+	 * Records not yet written to disk.
+	 */
+	private ByteArrayOutputStream pending;
+	private ScheduledFuture<?> scheduledFlush;
+	
+	private PlaylistJournal(Path location, FileChannel channel) {
+		this.location = location;
+		this.channel = channel;
+		this.pending = new ByteArrayOutputStream();
+	}
+	
+	/**
+	 * Opens the journal at given location. Records of an existing journal are kept, to be replayed by
+	 * {@link #replay(PlaylistModel)}, if it has been started from given base playlist as it is now;
+	 * otherwise the journal is started anew.
+	 * 
+	 * @param location Journal location.
+	 * @param base Saved playlist the journal applies to; null for a playlist which hasn't been saved.
+	 * @return Opened journal.
+	 * @throws IOException I/O error.
+	 */
+	public static PlaylistJournal open(Path location, File base) throws IOException {
+		FileChannel channel = FileChannel.open(location, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		PlaylistJournal journal = new PlaylistJournal(location, channel);
+		
+		try {
+			if(!journal.matches(base))
+				journal.restart(base);
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+		
+		return journal;
+	}
+	
+	/**
+	 * @param playlist Saved playlist.
+	 * @return Location of the journal of given playlist.
+	 */
+	public static Path locationOf(File playlist) {
+		return new File(playlist.getPath() + SUFFIX).toPath();
+	}
+	
+	/**
+	 * Applies all records of this journal to given model, which is expected to hold the base playlist as
+	 * it was loaded. Replay stops at the first torn or corrupt record, or at the first record which doesn't
+	 * fit the model, and the journal is cut there; new records are appended after the last replayed one.
+	 * <p>
+	 * The model is expected not to have this journal attached, as replayed changes would be recorded again.
+	 * 
+	 * @param model Model holding the base playlist.
+	 * @return Number of replayed records.
+	 * @throws IOException I/O error.
+	 */
+	public int replay(PlaylistModel model) throws IOException {
+		synchronized(channelLock) {
+			return replayRecords(model);
+		}
+	}
+	
+	private int replayRecords(PlaylistModel model) throws IOException {
+		channel.position(HEADER_LENGTH);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		
+		long position = HEADER_LENGTH;
+		int replayed = 0;
+		CRC32 crc = new CRC32();
+		
+		model.beginBatch();
+		try {
+			while(true) {
+				byte[] record;
+				
+				try {
+					int length = in.readInt();
+					int checksum = in.readInt();
+					if(length <= 0 || position + RECORD_HEADER_LENGTH + length > channel.size())
+						break;
+					
+					record = new byte[length];
+					in.readFully(record);
+					
+					crc.reset();
+					crc.update(record, 0, length);
+					if((int) crc.getValue() != checksum)
+						break;
+				} catch(EOFException e) {
+					break;
+				}
+				
+				try {
+					apply(new DataInputStream(new ByteArrayInputStream(record)), model);
+				} catch(IOException | IndexOutOfBoundsException e) {
+					// doesn't fit the model; the journal is cut here
+					break;
+				}
+				
+				position += RECORD_HEADER_LENGTH + record.length;
+				replayed++;
+			}
+		} finally {
+			model.endBatch();
+		}
+		
+		channel.truncate(position);
+		channel.position(position);
+		channel.force(false);
+		return replayed;
+	}
+	
+	/**
+	 * Drops all records and starts the journal anew, e.g. once the playlist has been saved.
+	 * 
+	 * @param base Saved playlist the journal applies to from now on; null for a playlist which hasn't been
+	 * saved.
+	 * @throws IOException I/O error.
+	 */
+	public void restart(File base) throws IOException {
+		synchronized(channelLock) {
+			dropPending();
+			writeHeader(base);
+		}
+	}
+	
+	private void writeHeader(File base) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC).putInt(VERSION);
+		header.putLong(base == null ? 0 : base.length()).putLong(base == null ? 0 : base.lastModified());
+		header.flip();
+		
+		channel.truncate(0);
+		channel.position(0);
+		while(header.hasRemaining())
+			channel.write(header);
+		channel.force(false);
+	}
+	
+	/**
+	 * Writes all buffered records to disk, and waits until they have been stored.
+	 * 
+	 * @throws IOException I/O error.
+	 */
+	public void flush() throws IOException {
+		synchronized(channelLock) {
+			ByteBuffer records = ByteBuffer.wrap(dropPending());
+			if(!records.hasRemaining() || !channel.isOpen())
+				return;
+			
+			while(records.hasRemaining())
+				channel.write(records);
+			channel.force(false);
+		}
+	}
+	
+	/**
+	 * Writes all buffered records to disk and closes the journal; the journal is kept, to be replayed the
+	 * next time it is opened.
+	 * 
+	 * @throws IOException I/O error.
+	 */
+	public void close() throws IOException {
+		synchronized(channelLock) {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+	
+	/**
+	 * Closes the journal and deletes it, dropping all of its records, e.g. once its changes have been saved
+	 * or discarded.
+	 * 
+	 * @throws IOException I/O error.
+	 */
+	public void delete() throws IOException {
+		synchronized(channelLock) {
+			dropPending();
+			channel.close();
+			Files.deleteIfExists(location);
+		}
+	}
+	
+	@Override
+	public void albumAdded(File album, List<Track> tracks) {
+		append(out -> {
+			out.writeByte(ADD_ALBUM);
+			out.writeUTF(album.getPath());
+			writeTracks(out, tracks);
+		});
+	}
+	
+	@Override
+	public void tracksAdded(Collection<Track> tracks) {
+		append(out -> {
+			out.writeByte(ADD_TRACKS);
+			writeTracks(out, tracks);
+		});
+	}
+	
+	@Override
+	public void rangesRemoved(List<int[]> ranges) {
+		append(out -> {
+			out.writeByte(REMOVE_RANGES);
+			out.writeInt(ranges.size());
+			for(int[] range : ranges) {
+				out.writeInt(range[0]);
+				out.writeInt(range[1]);
+			}
+		});
+	}
+	
+	@Override
+	public void cleared() {
+		append(out -> out.writeByte(CLEAR));
+	}
+	
+	/**
+	 * Writer of a single record's payload.
+	 */
+	private static interface RecordWriter {
+		public void write(DataOutputStream out) throws IOException;
+	}
+	
+	/**
+	 * Buffers a single record, scheduling it to be written to disk.
+	 */
+	private synchronized void append(RecordWriter writer) {
+		if(!channel.isOpen())
+			return;
+		
+		try {
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			writer.write(new DataOutputStream(payload));
+			
+			CRC32 crc = new CRC32();
+			crc.update(payload.toByteArray());
+			
+			DataOutputStream out = new DataOutputStream(pending);
+			out.writeInt(payload.size());
+			out.writeInt((int) crc.getValue());
+			payload.writeTo(out);
+			
+			// records are written by the flusher even once enough have accumulated, as appending is done
+			// on the event dispatch thread
+			long delay = pending.size() >= MAX_PENDING_BYTES ? 0 : FLUSH_MILLIS;
+			if(scheduledFlush == null || scheduledFlush.getDelay(TimeUnit.MILLISECONDS) > delay) {
+				if(scheduledFlush != null)
+					scheduledFlush.cancel(false);
+				scheduledFlush = FLUSHER.schedule(this::scheduledFlush, delay, TimeUnit.MILLISECONDS);
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Takes all buffered records, cancelling their scheduled flush.
+	 * 
+	 * @return Buffered records; empty if there are none.
+	 */
+	private synchronized byte[] dropPending() {
+		if(scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		
+		byte[] records = pending.toByteArray();
+		pending = new ByteArrayOutputStream();
+		return records;
+	}
+	
+	private void scheduledFlush() {
+		try {
+			flush();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @return Whether the journal has been started from given base playlist as it is now.
+	 */
+	private boolean matches(File base) throws IOException {
+		if(channel.size() < HEADER_LENGTH)
+			return false;
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		while(header.hasRemaining() && channel.read(header, header.position()) >= 0) {}
+		header.flip();
+		
+		return header.getInt() == MAGIC && header.getInt() == VERSION
+				&& header.getLong() == (base == null ? 0 : base.length())
+				&& header.getLong() == (base == null ? 0 : base.lastModified());
+	}
+	
+	private static void apply(DataInputStream in, PlaylistModel model) throws IOException {
+		switch(in.readByte()) {
+		case ADD_ALBUM:
+			File album = new File(in.readUTF());
+			model.put(album, readTracks(in));
+			break;
+		case ADD_TRACKS:
+			model.addAll(readTracks(in));
+			break;
+		case REMOVE_RANGES:
+			int count = in.readInt();
+			List<int[]> ranges = new ArrayList<>(count);
+			int previousEnd = -1;
+			
+			for(int i = 0; i < count; i++) {
+				int[] range = { in.readInt(), in.readInt() };
+				if(range[0] <= previousEnd || range[1] < range[0] || range[1] >= model.getSize())
+					throw new IOException("Invalid range in journal!");
+				
+				ranges.add(range);
+				previousEnd = range[1];
+			}
+			
+			if(!ranges.isEmpty())
+				model.removeRanges(ranges);
+			break;
+		case CLEAR:
+			model.reset();
+			break;
+		default:
+			throw new IOException("Invalid journal record!");
+		}
+	}
+	
+	private static void writeTracks(DataOutputStream out, Collection<Track> tracks) throws IOException {
+		out.writeInt(tracks.size());
+		
+		for(Track track : tracks) {
+			out.writeUTF(track.getLocation());
+			writeString(out, track.getTitle());
+			
+			TrackMetadata metadata = track.getMetadata();
+			out.writeBoolean(metadata != null);
+			if(metadata != null) {
+				writeString(out, metadata.getArtist());
+				writeString(out, metadata.getAlbum());
+				writeString(out, metadata.getTitle());
+				out.writeInt(metadata.getTrackNumber());
+				out.writeLong(metadata.getDurationMillis());
+			}
+		}
+	}
+	
+	private static List<Track> readTracks(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Track> tracks = new ArrayList<>(Math.min(count, 1 << 16));
+		
+		for(int i = 0; i < count; i++) {
+			String location = in.readUTF();
+			String title = readString(in);
+			
+			TrackMetadata metadata = null;
+			if(in.readBoolean())
+				metadata = new TrackMetadata(readString(in), readString(in), readString(in), in.readInt(),
+						in.readLong());
+			
+			tracks.add(new Track(location, title, metadata));
+		}
+		
+		return tracks;
+	}
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if(s != null)
+			out.writeUTF(s);
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
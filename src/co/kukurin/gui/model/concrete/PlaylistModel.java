@@ -2,12 +2,21 @@ package co.kukurin.gui.model.concrete;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.swing.event.ListDataEvent;
 
 import co.kukurin.gui.main.JPlaylistComponent;
 import co.kukurin.gui.model.UpdateableListModel;
+import co.kukurin.xml.PlaylistSnapshot;
+import co.kukurin.xml.items.ColumnarTrackList;
 import co.kukurin.xml.items.Track;
 
 /**
@@ -16,6 +25,16 @@ import co.kukurin.xml.items.Track;
  * The model offers some useful functionality on top of {@link UpdateableListModel}'s default options,
  * namely it keeps track of all loaded albums thus far and provides the ability to delete all items from an
  * album in one swoop.
+ * <p>
+ * Albums are tracked as runs of consecutive tracks which partition the list, so removing an album only
+ * touches that album's runs, and listeners are notified of exactly the removed intervals. Tracks added
+ * without an album (e.g. when loading a playlist) are assigned the album of their directory.
+ * <p>
+ * Huge playlists may be backed by a {@link ColumnarTrackList} (see {@link #setItems(List)}), in which case
+ * rows are rendered through the list's reusable views.
+ * <p>
+ * Every change to the items is reported to the {@link MutationListener}, if one is set, e.g. to keep a
+ * {@link PlaylistJournal} of unsaved changes.
  * 
  * @author Toni Kukurin
  *
@@ -24,19 +43,77 @@ import co.kukurin.xml.items.Track;
 public class PlaylistModel extends UpdateableListModel<Track> {
 	
 	/**
-	 * Map of loaded albums and their locations on the system; note that not all tracks from this list will
-	 * necessarily always be in the current model's active set. However, since this map is only used whilst
-	 * removing items (i.e., when all songs from a certain album are to be deleted), that part is not a
-	 * major concern currently.
+	 * Consecutive tracks belonging to the same album.
+	 */
+	private static class Run {
+		private final File album;
+		private int start;
+		private int length;
+		
+		public Run(File album, int start, int length) {
+			this.album = album;
+			this.start = start;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * Runs covering the entire list, in order; the album of tracks which are not local files is null.
+	 */
+	private List<Run> runs;
+	
+	/**
+	 * Map of loaded albums and their runs, in order of position.
+	 */
+	private Map<File, List<Run>> loadedAlbums;
+	
+	/**
+	 * Album files created for tracks added without an album, by directory path.
+	 */
+	private Map<String, File> directories;
+	
+	/**
+	 * Listener notified of each change; null if none.
+	 */
+	private MutationListener mutationListener;
+	
+	/**
+	 * Receives every change made to the model's items as it is made, with the same arguments needed to
+	 * make it again; see {@link PlaylistModel#setMutationListener(MutationListener)}.
 	 */
-	private Map<File, List<Track>> loadedAlbums;
+	public static interface MutationListener {
+		
+		/**
+		 * @param album Album location.
+		 * @param tracks Tracks of the album, appended to the end of the list.
+		 */
+		public void albumAdded(File album, List<Track> tracks);
+		
+		/**
+		 * @param tracks Tracks appended to the end of the list, each assigned the album of its directory.
+		 */
+		public void tracksAdded(Collection<Track> tracks);
+		
+		/**
+		 * @param ranges Disjoint, inclusive {start, end} index ranges, in increasing order.
+		 */
+		public void rangesRemoved(List<int[]> ranges);
+		
+		/**
+		 * All items have been removed.
+		 */
+		public void cleared();
+	}
 	
 	/**
 	 * Default constructor; adds a data listener to enclosing instance of {@link JPlaylistComponent};
 	 * see {@link JPlaylistComponent#hasBeenModified}.
+	 * <p>
+	 * Events are coalesced per frame, as the playlist is commonly filled in large chunks.
 	 */
 	public PlaylistModel(JPlaylistComponent caller) {
-		this.loadedAlbums = new LinkedHashMap<>();
+		clearAlbums();
+		setCoalescingInterval(FRAME_MILLIS);
 		
 		addListDataListener(caller);
 	}
@@ -48,49 +125,317 @@ public class PlaylistModel extends UpdateableListModel<Track> {
 
 	@Override
 	public Track getElementAt(int index) {
+		if(items instanceof ColumnarTrackList)
+			return ((ColumnarTrackList) items).view(index);
+		
 		return items.get(index);
 	}
 	
 	public void put(File f, List<Track> tracks) {
-		loadedAlbums.put(f, tracks);
-		addAll(tracks);
+		if(tracks.isEmpty())
+			return;
+		
+		appendRun(f, tracks.size());
+		super.addAll(tracks);
+		
+		if(mutationListener != null)
+			mutationListener.albumAdded(f, tracks);
+	}
+	
+	/**
+	 * Adds all given albums in one batch, so listeners are notified of a single interval
+	 * regardless of the number of albums.
+	 * 
+	 * @param albums Albums and their tracklists, in the order they are to be added.
+	 */
+	public void putAll(Map<File, List<Track>> albums) {
+		batch(() -> albums.forEach(this::put));
 	}
 
+	/**
+	 * Adds given tracks, assigning each one the album of its directory.
+	 */
+	@Override
+	public boolean addAll(Collection<Track> items) {
+		for(Track track : items)
+			appendRun(albumOf(track.getDirectory()), 1);
+		
+		boolean result = super.addAll(items);
+		if(result && mutationListener != null)
+			mutationListener.tracksAdded(items);
+		
+		return result;
+	}
+	
+	@Override
+	public boolean add(Track item) {
+		return addAll(Collections.singletonList(item));
+	}
+	
+	@Override
+	public Track remove(int i) {
+		List<int[]> range = Collections.singletonList(new int[] { i, i });
+		removeFromRuns(range);
+		Track removed = super.remove(i);
+		
+		if(mutationListener != null)
+			mutationListener.rangesRemoved(range);
+		return removed;
+	}
+	
+	@Override
+	protected void removeRanges(List<int[]> ranges) {
+		removeFromRuns(ranges);
+		super.removeRanges(ranges);
+		
+		if(mutationListener != null)
+			mutationListener.rangesRemoved(ranges);
+	}
+	
+	@Override
+	protected void removeItems(List<int[]> ranges) {
+		if(items instanceof ColumnarTrackList)
+			((ColumnarTrackList) items).removeRanges(ranges);
+		else
+			super.removeItems(ranges);
+	}
+	
+	/**
+	 * Removes all tracks of given album.
+	 * 
+	 * @param f Album location.
+	 */
 	public void remove(File f) {
-		remove(f, true);
+		List<Run> albumRuns = loadedAlbums.get(f);
+		if(albumRuns == null)
+			return;
+		
+		List<int[]> ranges = new ArrayList<>(albumRuns.size());
+		for(Run run : albumRuns)
+			ranges.add(new int[] { run.start, run.start + run.length - 1 });
+		
+		removeRanges(ranges);
 	}
 	
-	public void remove(File f, boolean removeFromMap) {
-		List<Track> toRemove = loadedAlbums.get(f);
+	/**
+	 * Removes all tracks of given albums at once, so listeners are notified of the removed intervals
+	 * in a single pass over the list.
+	 * 
+	 * @param albums Album locations; albums which are not loaded are ignored.
+	 */
+	public void removeAlbums(Collection<File> albums) {
+		List<int[]> ranges = new ArrayList<>();
+		for(File album : albums) {
+			List<Run> albumRuns = loadedAlbums.get(album);
+			if(albumRuns == null)
+				continue;
+			
+			for(Run run : albumRuns)
+				ranges.add(new int[] { run.start, run.start + run.length - 1 });
+		}
 		
-		if(removeFromMap)
-			loadedAlbums.remove(f);
+		if(ranges.isEmpty())
+			return;
 		
-		removeAll(toRemove);
+		ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+		removeRanges(ranges);
 	}
 
 	public void reset() {
 		int tracksiz = items.size();
-		this.loadedAlbums = new LinkedHashMap<>();
 		this.items = new ArrayList<>();
+		clearAlbums();
 		
-		if(tracksiz <= 0)
-			tracksiz = 1;
+		if(tracksiz > 0)
+			record(ListDataEvent.INTERVAL_REMOVED, 0, tracksiz - 1);
 		
-		fireIntervalRemoved(this, 0, tracksiz - 1);
+		if(mutationListener != null)
+			mutationListener.cleared();
 	}
 	
 	public List<Track> getItems() {
 		return this.items;
 	}
 	
-	public Map<File, List<Track>> getLoadedAlbums() {
-		return this.loadedAlbums;
+	/**
+	 * @return Locations of all loaded albums, in the order they were first added.
+	 */
+	public Set<File> getLoadedAlbums() {
+		return Collections.unmodifiableSet(loadedAlbums.keySet());
+	}
+	
+	/**
+	 * @return Album runs covering the entire list, in order, e.g. to be stored in a {@link PlaylistSnapshot}.
+	 */
+	public List<PlaylistSnapshot.AlbumRun> getAlbumRuns() {
+		List<PlaylistSnapshot.AlbumRun> albumRuns = new ArrayList<>(runs.size());
+		for(Run run : runs)
+			albumRuns.add(new PlaylistSnapshot.AlbumRun(run.album, run.length));
+		
+		return albumRuns;
 	}
 	
+	/**
+	 * Replaces the model's items; a {@link ColumnarTrackList} is used as-is, without creating any
+	 * {@link Track} objects.
+	 * 
+	 * @param items New items.
+	 */
 	public void setItems(List<Track> items) {
+		setItems(items, null);
+	}
+	
+	/**
+	 * Replaces the model's items as in {@link #setItems(List)}, restoring given album runs.
+	 * 
+	 * @param items New items.
+	 * @param albumRuns Album runs covering all items, in order, as returned by {@link #getAlbumRuns()};
+	 * null (or runs not covering the items) to assign each track the album of its directory.
+	 */
+	public void setItems(List<Track> items, List<PlaylistSnapshot.AlbumRun> albumRuns) {
+		int previousSize = this.items.size();
 		this.items = items;
-		fireContentsChanged(this, 0, items.size() - 1);
+		
+		clearAlbums();
+		if(albumRuns != null && albumRuns.stream().mapToLong(PlaylistSnapshot.AlbumRun::getLength).sum() == items.size()) {
+			for(PlaylistSnapshot.AlbumRun run : albumRuns) {
+				if(run.getLength() > 0)
+					appendRun(run.getAlbum(), run.getLength());
+			}
+		} else if(items instanceof ColumnarTrackList) {
+			ColumnarTrackList columns = (ColumnarTrackList) items;
+			for(int i = 0; i < columns.size(); i++)
+				appendRun(albumOf(columns.getDirectory(i)), 1);
+		} else {
+			for(Track track : items)
+				appendRun(albumOf(track.getDirectory()), 1);
+		}
+		
+		// recorded rather than fired, so that events of the previous items still waiting for the frame timer
+		// are delivered first
+		beginBatch();
+		if(previousSize > 0)
+			record(ListDataEvent.INTERVAL_REMOVED, 0, previousSize - 1);
+		if(!items.isEmpty())
+			record(ListDataEvent.INTERVAL_ADDED, 0, items.size() - 1);
+		endBatch();
+		
+		if(mutationListener != null) {
+			mutationListener.cleared();
+			mutationListener.tracksAdded(items);
+		}
 	}
 	
+	/**
+	 * @param listener Listener notified of each change made from now on; null to stop notifying.
+	 */
+	public void setMutationListener(MutationListener listener) {
+		this.mutationListener = listener;
+	}
+	
+	private void clearAlbums() {
+		this.runs = new ArrayList<>();
+		this.loadedAlbums = new LinkedHashMap<>();
+		this.directories = new HashMap<>();
+	}
+	
+	/**
+	 * @return Album file of given track directory; null if the track is not a local file.
+	 */
+	private File albumOf(String directory) {
+		return directory == null ? null : directories.computeIfAbsent(directory, File::new);
+	}
+	
+	/**
+	 * Accounts for tracks appended to the end of the list.
+	 */
+	private void appendRun(File album, int length) {
+		Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+		
+		if(last != null && Objects.equals(last.album, album)) {
+			last.length += length;
+			return;
+		}
+		
+		Run run = new Run(album, last == null ? 0 : last.start + last.length, length);
+		runs.add(run);
+		
+		if(album != null)
+			loadedAlbums.computeIfAbsent(album, k -> new ArrayList<>()).add(run);
+	}
+	
+	/**
+	 * Accounts for removal of given ranges, dropping emptied runs and albums, and merging runs of the same
+	 * album which have become adjacent.
+	 * 
+	 * @param ranges Disjoint, inclusive {start, end} index ranges, in increasing order.
+	 */
+	private void removeFromRuns(List<int[]> ranges) {
+		int[] removed = new int[runs.size()];
+		int r = findRun(ranges.get(0)[0]);
+		
+		for(int[] range : ranges) {
+			while(runs.get(r).start + runs.get(r).length <= range[0])
+				r++;
+			
+			// a range may span several runs
+			for(int k = r; k < runs.size() && runs.get(k).start <= range[1]; k++) {
+				Run run = runs.get(k);
+				int from = Math.max(run.start, range[0]);
+				int to = Math.min(run.start + run.length - 1, range[1]);
+				removed[k] += to - from + 1;
+			}
+		}
+		
+		List<Run> remaining = new ArrayList<>(runs.size());
+		int start = 0;
+		
+		for(int k = 0; k < runs.size(); k++) {
+			Run run = runs.get(k);
+			run.length -= removed[k];
+			
+			Run last = remaining.isEmpty() ? null : remaining.get(remaining.size() - 1);
+			
+			if(run.length > 0 && (last == null || !Objects.equals(last.album, run.album))) {
+				run.start = start;
+				start += run.length;
+				remaining.add(run);
+				continue;
+			}
+			
+			if(run.length > 0) {
+				last.length += run.length;
+				start += run.length;
+			}
+			
+			if(run.album != null) {
+				List<Run> albumRuns = loadedAlbums.get(run.album);
+				albumRuns.remove(run);
+				
+				if(albumRuns.isEmpty())
+					loadedAlbums.remove(run.album);
+			}
+		}
+		
+		runs = remaining;
+	}
+	
+	/**
+	 * @return Index of the run containing given position.
+	 */
+	private int findRun(int position) {
+		int low = 0, high = runs.size() - 1;
+		
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			
+			if(runs.get(mid).start <= position)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		
+		return low;
+	}
+
 }
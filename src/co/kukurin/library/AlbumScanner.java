@@ -0,0 +1,221 @@
+package co.kukurin.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import co.kukurin.utils.Constants;
+import co.kukurin.utils.PropertyManager;
+import co.kukurin.utils.profiling.AlbumScanEvent;
+import co.kukurin.utils.profiling.FlightRecording;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Work-stealing album scanner.
+ * <p>
+ * Every directory within an album is scanned as a separate {@link RecursiveTask}, so both multiple albums
+ * and large albums with many subdirectories are split across the pool's workers. Track order within an
+ * album is the same one {@link Files#walkFileTree(Path, java.nio.file.FileVisitor)} would produce, and
+ * albums are returned in the order they were given.
+ * <p>
+ * Each scan is reported as an {@link AlbumScanEvent} to the flight recorder, once it has been started.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class AlbumScanner {
+	
+	/**
+	 * Pool all scans are executed in; its threads are daemon threads, so an idle scanner never
+	 * keeps the application alive.
+	 */
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Creates a scanner whose parallelism is read from {@link Constants#PROPERTY_SCAN_PARALLELISM},
+	 * defaulting to the number of available processors if the property is missing or invalid.
+	 */
+	public AlbumScanner() {
+		this(PropertyManager.getPositiveInt(Constants.PROPERTY_SCAN_PARALLELISM,
+				Runtime.getRuntime().availableProcessors()));
+	}
+	
+	/**
+	 * @param parallelism Maximum number of directories scanned at once (positive).
+	 */
+	public AlbumScanner(int parallelism) {
+		if(parallelism <= 0)
+			throw new IllegalArgumentException("Parallelism must be positive!");
+		
+		this.pool = new ForkJoinPool(parallelism);
+	}
+	
+	/**
+	 * Scans all given albums in parallel.
+	 * 
+	 * @param albums Album locations.
+	 * @return Tracklists, in the same order as given albums.
+	 * @throws IOException I/O error while traversing any of the albums.
+	 */
+	public List<List<Track>> scan(Collection<File> albums) throws IOException {
+		AlbumScanEvent event = FlightRecording.isActive() ? new AlbumScanEvent() : null;
+		if(event != null)
+			event.begin();
+		
+		ScanCounts counts = new ScanCounts();
+		List<DirectoryTask> tasks = new ArrayList<>(albums.size());
+		for(File album : albums)
+			tasks.add(new DirectoryTask(album.toPath(), counts));
+		
+		try {
+			List<List<Track>> tracklists = pool.invoke(new RecursiveTask<List<List<Track>>>() {
+				@Override
+				protected List<List<Track>> compute() {
+					invokeAll(tasks);
+					
+					List<List<Track>> result = new ArrayList<>(tasks.size());
+					for(DirectoryTask task : tasks)
+						result.add(task.join());
+					return result;
+				}
+			});
+			
+			counts.report(event, albums.size());
+			return tracklists;
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Scans a single album.
+	 * 
+	 * @param album Album location.
+	 * @return Album tracklist.
+	 * @throws IOException I/O error while traversing the album.
+	 */
+	public List<Track> scan(File album) throws IOException {
+		AlbumScanEvent event = FlightRecording.isActive() ? new AlbumScanEvent() : null;
+		if(event != null)
+			event.begin();
+		
+		ScanCounts counts = new ScanCounts();
+		
+		try {
+			List<Track> result = pool.invoke(new DirectoryTask(album.toPath(), counts));
+			
+			counts.report(event, 1);
+			return result;
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * @return The scanner's parallelism level.
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * @param filename Name of the file to check.
+	 * @return True if the file has one of {@link Constants#AUDIO_SUFFIXES}.
+	 */
+	public static boolean isAudioFile(String filename) {
+		for(String extension : Constants.AUDIO_SUFFIXES) {
+			if(filename.endsWith(extension))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Numbers of entries seen during a single scan, shared by all of its tasks.
+	 */
+	private static class ScanCounts {
+		private final LongAdder directories = new LongAdder();
+		private final LongAdder files = new LongAdder();
+		private final LongAdder tracks = new LongAdder();
+		
+		public void report(AlbumScanEvent event, int albums) {
+			if(event == null)
+				return;
+			
+			event.albums = albums;
+			event.directories = directories.sum();
+			event.files = files.sum();
+			event.tracks = tracks.sum();
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Lists a single directory, forking a subtask for each subdirectory it contains.
+	 * Subtask results are spliced in at the subdirectory's position, so the resulting order
+	 * is the one of a depth-first walk.
+	 */
+	@SuppressWarnings("serial")
+	private static class DirectoryTask extends RecursiveTask<List<Track>> {
+		
+		private final Path directory;
+		private final ScanCounts counts;
+		
+		public DirectoryTask(Path directory, ScanCounts counts) {
+			this.directory = directory;
+			this.counts = counts;
+		}
+		
+		@Override
+		protected List<Track> compute() {
+			// entries are either a Track or a forked DirectoryTask, in directory stream order
+			List<Object> entries = new ArrayList<>();
+			counts.directories.increment();
+			
+			try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for(Path entry : stream) {
+					BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+							LinkOption.NOFOLLOW_LINKS);
+					
+					if(attrs.isDirectory()) {
+						DirectoryTask subtask = new DirectoryTask(entry, counts);
+						subtask.fork();
+						entries.add(subtask);
+						continue;
+					}
+					
+					counts.files.increment();
+					if(isAudioFile(entry.getFileName().toString())) {
+						counts.tracks.increment();
+						entries.add(new Track(entry.toFile()));
+					}
+				}
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			
+			List<Track> tracks = new ArrayList<>();
+			for(Object entry : entries) {
+				if(entry instanceof DirectoryTask)
+					tracks.addAll(((DirectoryTask) entry).join());
+				else
+					tracks.add((Track) entry);
+			}
+			
+			return tracks;
+		}
+	}
+
+}
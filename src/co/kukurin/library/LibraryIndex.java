@@ -0,0 +1,506 @@
+package co.kukurin.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import co.kukurin.utils.Constants;
+
+/**
+ * Persistent index of the music library.
+ * <p>
+ * The index stores every directory within the library root along with its last modification time,
+ * and every album directory (i.e. any directory directly containing at least one file) along with its
+ * audio tracks, their sizes and modification times. It is stored in {@link Constants#LIBRARY_INDEX_LOCATION},
+ * next to the property file, so the library doesn't have to be traversed again on each album manager
+ * invocation.
+ * <p>
+ * Adding or removing a directory entry updates the directory's modification time, so the index can be
+ * validated by a single stat call per directory instead of a full traversal; see {@link #isStale()}.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class LibraryIndex {
+	
+	private static final int MAGIC = 0x4C494458;
+	private static final int VERSION = 1;
+	
+	/**
+	 * Most recently opened index; see {@link #open(File)}.
+	 */
+	private static LibraryIndex current;
+	
+	/**
+	 * Absolute, normalized library root.
+	 */
+	private final Path root;
+	
+	/**
+	 * All directories within the library and their last modification times.
+	 */
+	private final Map<Path, Long> directories;
+	
+	/**
+	 * Album directories and their tracks, in post-order traversal order.
+	 */
+	private final Map<Path, List<TrackEntry>> albums;
+	
+	/**
+	 * Whether the index has been updated since it was built, loaded or stored.
+	 */
+	private boolean modified;
+	
+	/**
+	 * Single audio file entry within an album.
+	 */
+	public static class TrackEntry {
+		
+		private final String name;
+		private final long size;
+		private final long lastModified;
+		
+		public TrackEntry(String name, long size, long lastModified) {
+			this.name = name;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public long getSize() {
+			return size;
+		}
+		
+		public long getLastModified() {
+			return lastModified;
+		}
+		
+	}
+	
+	/**
+	 * Net result of an {@link #update(Collection)} call.
+	 */
+	public static class Changes {
+		
+		private final Set<File> addedAlbums = new LinkedHashSet<>();
+		private final Set<File> removedAlbums = new LinkedHashSet<>();
+		private final List<Path> addedDirectories = new ArrayList<>();
+		
+		private void albumAdded(Path album) {
+			if(!removedAlbums.remove(album.toFile()))
+				addedAlbums.add(album.toFile());
+		}
+		
+		private void albumRemoved(Path album) {
+			if(!addedAlbums.remove(album.toFile()))
+				removedAlbums.add(album.toFile());
+		}
+		
+		/**
+		 * @return Albums which were not in the index prior to the update.
+		 */
+		public Set<File> getAddedAlbums() {
+			return addedAlbums;
+		}
+		
+		/**
+		 * @return Albums which are no longer in the index.
+		 */
+		public Set<File> getRemovedAlbums() {
+			return removedAlbums;
+		}
+		
+		/**
+		 * @return Newly indexed directories.
+		 */
+		public List<Path> getAddedDirectories() {
+			return addedDirectories;
+		}
+		
+		/**
+		 * @return True if the album list has not been changed by the update.
+		 */
+		public boolean isEmpty() {
+			return addedAlbums.isEmpty() && removedAlbums.isEmpty();
+		}
+		
+	}
+	
+	private LibraryIndex(Path root) {
+		this.root = root;
+		this.directories = new LinkedHashMap<>();
+		this.albums = new LinkedHashMap<>();
+	}
+	
+	/**
+	 * Returns the index for given library root.
+	 * <p>
+	 * The index is taken from memory if it has already been opened, otherwise it is loaded from
+	 * {@link Constants#LIBRARY_INDEX_LOCATION}. In case no stored index exists for given root, the
+	 * library is traversed and the resulting index is stored.
+	 * <p>
+	 * Note that the returned index may be stale; see {@link #isStale()}.
+	 * 
+	 * @param libraryRoot Library root location.
+	 * @return Library index.
+	 * @throws IOException I/O error.
+	 */
+	public static synchronized LibraryIndex open(File libraryRoot) throws IOException {
+		Path root = normalize(libraryRoot.toPath());
+		
+		if(current != null && current.root.equals(root))
+			return current;
+		
+		Path indexFile = Paths.get(Constants.LIBRARY_INDEX_LOCATION);
+		LibraryIndex index = null;
+		
+		if(Files.exists(indexFile)) {
+			try {
+				index = load(indexFile);
+			} catch(IOException ignore) {
+				// corrupt or outdated index, rebuilt below
+			}
+		}
+		
+		if(index == null || !index.root.equals(root)) {
+			index = build(root.toFile());
+			index.store(indexFile);
+		}
+		
+		current = index;
+		return index;
+	}
+	
+	/**
+	 * Traverses the entire library tree, creating a new index.
+	 * 
+	 * @param libraryRoot Library root location.
+	 * @return Library index.
+	 * @throws IOException I/O error.
+	 */
+	public static LibraryIndex build(File libraryRoot) throws IOException {
+		LibraryIndex index = new LibraryIndex(normalize(libraryRoot.toPath()));
+		index.addSubtree(index.root, new Changes());
+		
+		return index;
+	}
+	
+	/**
+	 * Loads a previously stored index.
+	 * 
+	 * @param indexFile Location of the stored index.
+	 * @return Library index.
+	 * @throws IOException I/O error, or invalid index format.
+	 */
+	public static LibraryIndex load(Path indexFile) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Invalid library index format!");
+			
+			LibraryIndex index = new LibraryIndex(Paths.get(in.readUTF()));
+			
+			int directoryCount = in.readInt();
+			for(int i = 0; i < directoryCount; i++)
+				index.directories.put(index.root.resolve(in.readUTF()), in.readLong());
+			
+			int albumCount = in.readInt();
+			for(int i = 0; i < albumCount; i++) {
+				Path album = index.root.resolve(in.readUTF());
+				int trackCount = in.readInt();
+				List<TrackEntry> tracks = new ArrayList<>(trackCount);
+				
+				for(int j = 0; j < trackCount; j++)
+					tracks.add(new TrackEntry(in.readUTF(), in.readLong(), in.readLong()));
+				
+				index.albums.put(album, tracks);
+			}
+			
+			return index;
+		}
+	}
+	
+	/**
+	 * Stores the index to given location. The index is first written to a temporary file, so an
+	 * interrupted write never leaves a corrupt index behind.
+	 * 
+	 * @param indexFile Location to store the index to.
+	 * @throws IOException I/O error.
+	 */
+	public synchronized void store(Path indexFile) throws IOException {
+		Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(root.toString());
+			
+			out.writeInt(directories.size());
+			for(Map.Entry<Path, Long> directory : directories.entrySet()) {
+				out.writeUTF(root.relativize(directory.getKey()).toString());
+				out.writeLong(directory.getValue());
+			}
+			
+			out.writeInt(albums.size());
+			for(Map.Entry<Path, List<TrackEntry>> album : albums.entrySet()) {
+				out.writeUTF(root.relativize(album.getKey()).toString());
+				out.writeInt(album.getValue().size());
+				
+				for(TrackEntry track : album.getValue()) {
+					out.writeUTF(track.name);
+					out.writeLong(track.size);
+					out.writeLong(track.lastModified);
+				}
+			}
+		}
+		
+		Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+		modified = false;
+	}
+	
+	/**
+	 * @return Whether the index has been updated since it was built, loaded or last stored.
+	 */
+	public synchronized boolean isModified() {
+		return modified;
+	}
+	
+	/**
+	 * Checks whether the library has changed since the index was built, by comparing the modification
+	 * time of each indexed directory against the file system.
+	 * <p>
+	 * Only structural changes (files or directories being added, removed or renamed) are detected;
+	 * rewriting the contents of an existing file doesn't make the index stale.
+	 * 
+	 * @return True if any of the indexed directories has been modified or removed.
+	 */
+	public boolean isStale() {
+		return !getChangedDirectories(true).isEmpty();
+	}
+	
+	/**
+	 * Compares the modification time of each indexed directory against the file system.
+	 * 
+	 * @param firstOnly Whether to stop after the first changed directory is found.
+	 * @return Indexed directories which have been modified or removed since they were indexed.
+	 */
+	public synchronized List<Path> getChangedDirectories(boolean firstOnly) {
+		List<Path> changed = new ArrayList<>();
+		
+		for(Map.Entry<Path, Long> directory : directories.entrySet()) {
+			try {
+				long lastModified = Files.getLastModifiedTime(directory.getKey()).toMillis();
+				if(lastModified != directory.getValue())
+					changed.add(directory.getKey());
+			} catch(IOException e) {
+				changed.add(directory.getKey());
+			}
+			
+			if(firstOnly && !changed.isEmpty())
+				break;
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * Brings the index up to date for given paths, without traversing the rest of the library.
+	 * <p>
+	 * Paths which no longer exist are removed from the index along with everything below them,
+	 * new directories are indexed along with their entire subtree, and existing directories (or
+	 * directories containing given files) are re-listed.
+	 * 
+	 * @param paths Paths which have been changed.
+	 * @return Net changes to the album list.
+	 */
+	public synchronized Changes update(Collection<Path> paths) {
+		Changes changes = new Changes();
+		Set<Path> removed = new HashSet<>();
+		
+		for(Path p : paths) {
+			p = normalize(p);
+			if(!p.startsWith(root))
+				continue;
+			
+			modified = true;
+			try {
+				if(!Files.exists(p, LinkOption.NOFOLLOW_LINKS)) {
+					if(directories.containsKey(p))
+						removed.add(p);
+				} else if(!Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+					if(directories.containsKey(p.getParent()))
+						updateDirectory(p.getParent(), changes);
+				} else if(directories.containsKey(p)) {
+					updateDirectory(p, changes);
+				} else {
+					addSubtree(p, changes);
+				}
+			} catch(IOException e) {
+				// vanished while being listed
+				removed.add(p);
+			}
+		}
+		
+		if(!removed.isEmpty())
+			removeSubtrees(removed, changes);
+		
+		return changes;
+	}
+	
+	/**
+	 * @return Library root.
+	 */
+	public Path getRoot() {
+		return root;
+	}
+	
+	/**
+	 * @return All album directories within the library.
+	 */
+	public synchronized List<File> getAlbums() {
+		List<File> result = new ArrayList<>(albums.size());
+		albums.keySet().forEach(album -> result.add(album.toFile()));
+		return result;
+	}
+	
+	/**
+	 * @param album Album directory.
+	 * @return Indexed tracks of given album; empty list if album is not within the index.
+	 */
+	public synchronized List<TrackEntry> getTracks(File album) {
+		List<TrackEntry> tracks = albums.get(normalize(album.toPath()));
+		return tracks == null ? Collections.emptyList() : Collections.unmodifiableList(tracks);
+	}
+	
+	/**
+	 * @return All indexed directories, including the library root.
+	 */
+	public synchronized List<Path> getDirectories() {
+		return new ArrayList<>(directories.keySet());
+	}
+	
+	/**
+	 * Indexes given directory and everything below it.
+	 */
+	private void addSubtree(Path start, Changes changes) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			Map<Path, List<TrackEntry>> containsFiles = new LinkedHashMap<>();
+			
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				directories.put(dir, attrs.lastModifiedTime().toMillis());
+				changes.addedDirectories.add(dir);
+				return super.preVisitDirectory(dir, attrs);
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				List<TrackEntry> tracks = containsFiles.computeIfAbsent(file.getParent(), k -> new ArrayList<>());
+				String filename = file.getFileName().toString();
+				
+				if(AlbumScanner.isAudioFile(filename))
+					tracks.add(new TrackEntry(filename, attrs.size(), attrs.lastModifiedTime().toMillis()));
+				
+				return super.visitFile(file, attrs);
+			}
+			
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				List<TrackEntry> tracks = containsFiles.remove(dir);
+				if(tracks != null && albums.put(dir, tracks) == null)
+					changes.albumAdded(dir);
+				return super.postVisitDirectory(dir, exc);
+			}
+		});
+	}
+	
+	/**
+	 * Removes given paths and everything below them from the index, in a single pass.
+	 */
+	private void removeSubtrees(Set<Path> removed, Changes changes) {
+		directories.keySet().removeIf(dir -> isWithin(dir, removed));
+		
+		Iterator<Path> it = albums.keySet().iterator();
+		while(it.hasNext()) {
+			Path album = it.next();
+			if(isWithin(album, removed)) {
+				it.remove();
+				changes.albumRemoved(album);
+			}
+		}
+	}
+	
+	private boolean isWithin(Path p, Set<Path> ancestors) {
+		for(Path current = p; current != null && current.startsWith(root); current = current.getParent()) {
+			if(ancestors.contains(current))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Re-lists a single indexed directory, updating its tracks and album status; subdirectories which
+	 * have appeared in the meantime are indexed as well.
+	 */
+	private void updateDirectory(Path dir, Changes changes) throws IOException {
+		List<TrackEntry> tracks = new ArrayList<>();
+		boolean containsFiles = false;
+		
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for(Path entry : stream) {
+				BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+						LinkOption.NOFOLLOW_LINKS);
+				
+				if(attrs.isDirectory()) {
+					if(!directories.containsKey(entry))
+						addSubtree(entry, changes);
+					continue;
+				}
+				
+				containsFiles = true;
+				String filename = entry.getFileName().toString();
+				if(AlbumScanner.isAudioFile(filename))
+					tracks.add(new TrackEntry(filename, attrs.size(), attrs.lastModifiedTime().toMillis()));
+			}
+		}
+		
+		directories.put(dir, Files.getLastModifiedTime(dir).toMillis());
+		
+		if(containsFiles) {
+			if(albums.put(dir, tracks) == null)
+				changes.albumAdded(dir);
+		} else if(albums.remove(dir) != null) {
+			changes.albumRemoved(dir);
+		}
+	}
+	
+	private static Path normalize(Path p) {
+		return p.toAbsolutePath().normalize();
+	}
+
+}
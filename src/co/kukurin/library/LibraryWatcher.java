@@ -0,0 +1,207 @@
+package co.kukurin.library;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import co.kukurin.utils.Constants;
+
+/**
+ * Keeps a {@link LibraryIndex} up to date by watching every directory within the library.
+ * <p>
+ * Create and delete events (renames are reported as a delete followed by a create) are collected into
+ * a set of changed paths, and are only applied to the index once no new events have arrived for
+ * {@link #QUIET_PERIOD_MILLIS}, or at most every {@link #MAX_DELAY_MILLIS} while events keep arriving.
+ * Each applied batch is reported to the {@link Listener} as a single set of added and removed albums,
+ * so copying hundreds of albums results in a handful of notifications.
+ * <p>
+ * Directories changed while the watcher was not running are detected on startup by comparing their
+ * modification times; see {@link LibraryIndex#getChangedDirectories(boolean)}. In case any directory can't
+ * be watched (e.g. once the system's limit of watched directories has been reached), the failure is reported
+ * and the library is additionally rescanned this way every {@link #RESCAN_INTERVAL_MILLIS}.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class LibraryWatcher implements Closeable {
+	
+	private static final long QUIET_PERIOD_MILLIS = 300;
+	private static final long MAX_DELAY_MILLIS = 2000;
+	private static final long RESCAN_INTERVAL_MILLIS = 60_000;
+	
+	/**
+	 * Receives batched album list changes; invoked from the watcher thread.
+	 */
+	@FunctionalInterface
+	public static interface Listener {
+		public void libraryChanged(LibraryIndex.Changes changes);
+	}
+	
+	private final LibraryIndex index;
+	private final Listener listener;
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> watchedDirectories;
+	private final Thread thread;
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Whether any directory couldn't be watched, in which case the library is periodically rescanned.
+	 */
+	private boolean rescanning;
+	
+	/**
+	 * Creates a watcher for given index; call {@link #start()} to begin watching.
+	 * 
+	 * @param index Index to be kept up to date.
+	 * @param listener Listener notified after each batch of changes.
+	 * @throws IOException In case no watch service is available.
+	 */
+	public LibraryWatcher(LibraryIndex index, Listener listener) throws IOException {
+		this.index = index;
+		this.listener = listener;
+		this.watchService = index.getRoot().getFileSystem().newWatchService();
+		this.watchedDirectories = new HashMap<>();
+		
+		this.thread = new Thread(this::run, "library-watcher");
+		this.thread.setDaemon(true);
+	}
+	
+	/**
+	 * Starts watching in the background.
+	 */
+	public void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Stops watching and stores the index, if it has been updated, in the background. The storing thread
+	 * first waits for the watcher to apply any batch it is in the middle of, and isn't a daemon thread, so
+	 * the index is stored even if the application exits right away.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watchService.close();
+		
+		Thread store = new Thread(() -> {
+			try {
+				thread.join();
+				
+				if(index.isModified())
+					index.store(Paths.get(Constants.LIBRARY_INDEX_LOCATION));
+			} catch(InterruptedException ignore) {
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}, "library-index-store");
+		store.start();
+	}
+	
+	private void run() {
+		Set<Path> pending = new LinkedHashSet<>();
+		
+		try {
+			index.getDirectories().forEach(this::register);
+			
+			// catch up with anything changed while nobody was watching
+			pending.addAll(index.getChangedDirectories(false));
+			if(!pending.isEmpty())
+				flush(pending);
+			
+			long firstEvent = 0;
+			long lastRescan = System.currentTimeMillis();
+			while(!closed) {
+				long nextRescan = lastRescan + RESCAN_INTERVAL_MILLIS - System.currentTimeMillis();
+				
+				WatchKey key;
+				if(!pending.isEmpty())
+					key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+				else if(rescanning)
+					key = watchService.poll(Math.max(1, nextRescan), TimeUnit.MILLISECONDS);
+				else
+					key = watchService.take();
+				
+				if(key != null) {
+					if(pending.isEmpty())
+						firstEvent = System.currentTimeMillis();
+					collect(key, pending);
+				}
+				
+				if(rescanning && System.currentTimeMillis() - lastRescan >= RESCAN_INTERVAL_MILLIS) {
+					// directories which couldn't be watched are caught up with by comparing modification times
+					if(pending.isEmpty())
+						firstEvent = System.currentTimeMillis();
+					pending.addAll(index.getChangedDirectories(false));
+					lastRescan = System.currentTimeMillis();
+				}
+				
+				boolean quiet = key == null;
+				boolean overdue = System.currentTimeMillis() - firstEvent >= MAX_DELAY_MILLIS;
+				
+				if(!pending.isEmpty() && (quiet || overdue))
+					flush(pending);
+			}
+		} catch(ClosedWatchServiceException | InterruptedException e) {
+			// closed
+		}
+	}
+	
+	private void collect(WatchKey key, Set<Path> pending) {
+		Path dir = watchedDirectories.get(key);
+		
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == OVERFLOW) {
+				// events were lost, fall back to comparing modification times
+				pending.addAll(index.getChangedDirectories(false));
+			} else if(dir != null) {
+				pending.add(dir);
+				pending.add(dir.resolve((Path) event.context()));
+			}
+		}
+		
+		if(!key.reset())
+			watchedDirectories.remove(key);
+	}
+	
+	private void flush(Set<Path> pending) {
+		LibraryIndex.Changes changes = index.update(pending);
+		pending.clear();
+		
+		changes.getAddedDirectories().forEach(this::register);
+		
+		if(!changes.isEmpty())
+			listener.libraryChanged(changes);
+	}
+	
+	private void register(Path dir) {
+		try {
+			watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE), dir);
+		} catch(NoSuchFileException e) {
+			// directory removed in the meantime; its removal is picked up by the parent's events
+		} catch(ClosedWatchServiceException e) {
+			throw e;
+		} catch(IOException e) {
+			if(!rescanning)
+				System.err.println("Can't watch " + dir + " (" + e + "), rescanning the library every "
+						+ RESCAN_INTERVAL_MILLIS / 1000 + " s instead");
+			rescanning = true;
+		}
+	}
+
+}
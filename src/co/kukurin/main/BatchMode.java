@@ -0,0 +1,244 @@
+package co.kukurin.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import co.kukurin.library.AlbumScanner;
+import co.kukurin.metadata.TrackTagger;
+import co.kukurin.utils.Constants;
+import co.kukurin.xml.XMLPlaylistUtils;
+import co.kukurin.xml.items.Playlist;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Headless command line mode, generating playlists without showing any window:
+ * <pre>
+ * Main [-out &lt;directory&gt;] [-jobs &lt;n&gt;] [-notags] &lt;source&gt;...
+ * </pre>
+ * Each source results in a single playlist, named after the source and written to the output directory
+ * (the current directory by default); sources resulting in the same playlist name are rejected. A source
+ * is either an album directory, or a text file listing album directories, one per line; blank lines and
+ * lines starting with <code>#</code> are skipped.
+ * <p>
+ * Albums are scanned by a shared {@link AlbumScanner} and, unless <code>-notags</code> is given, tagged by a
+ * shared {@link TrackTagger}, as when adding albums to a playlist in the main window. Up to <code>-jobs</code>
+ * playlists (the number of available processors by default) are generated and written at once.
+ * <p>
+ * Only non-GUI classes are used, so no AWT or Swing classes are ever loaded; the JVM is additionally
+ * marked as headless.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class BatchMode {
+	
+	private static final String USAGE = "Usage: Main [-out <directory>] [-jobs <n>] [-notags] <source>...\n"
+			+ "  <source>  album directory, or a text file listing album directories (one per line)\n"
+			+ "  -out      directory playlists are written to (default: current directory)\n"
+			+ "  -jobs     number of playlists generated at once (default: number of processors)\n"
+			+ "  -notags   don't read tags of tracks";
+	
+	private final File outputDirectory;
+	private final AlbumScanner scanner;
+	
+	/**
+	 * Tagger of scanned tracks; null if tracks are not tagged.
+	 */
+	private final TrackTagger tagger;
+	
+	/**
+	 * @param outputDirectory Directory playlists are written to.
+	 * @param tags Whether scanned tracks are tagged.
+	 */
+	public BatchMode(File outputDirectory, boolean tags) {
+		this.outputDirectory = outputDirectory;
+		this.scanner = new AlbumScanner();
+		this.tagger = tags ? new TrackTagger() : null;
+	}
+	
+	/**
+	 * Parses the command line and generates all playlists.
+	 * 
+	 * @param args Command line arguments (non-empty).
+	 * @return Exit status; 0 on success, 1 on invalid arguments and 2 if any playlist failed.
+	 */
+	public static int run(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		
+		File outputDirectory = new File(".");
+		int jobs = Runtime.getRuntime().availableProcessors();
+		boolean tags = true;
+		List<File> sources = new ArrayList<>();
+		
+		try {
+			for(int i = 0; i < args.length; i++) {
+				switch(args[i]) {
+				case "-out":
+					outputDirectory = new File(args[++i]);
+					break;
+				case "-jobs":
+					jobs = Integer.parseInt(args[++i]);
+					if(jobs <= 0)
+						throw new IllegalArgumentException("Number of jobs must be positive!");
+					break;
+				case "-notags":
+					tags = false;
+					break;
+				case "-help":
+					System.out.println(USAGE);
+					return 0;
+				default:
+					if(args[i].startsWith("-"))
+						throw new IllegalArgumentException("Unknown option " + args[i]);
+					sources.add(new File(args[i]));
+				}
+			}
+			
+			if(sources.isEmpty())
+				throw new IllegalArgumentException("No sources given!");
+			if(!outputDirectory.isDirectory())
+				throw new IllegalArgumentException("Output directory " + outputDirectory + " doesn't exist!");
+			checkTitles(sources);
+		} catch(ArrayIndexOutOfBoundsException e) {
+			System.err.println("Missing value of " + args[args.length - 1]);
+			System.err.println(USAGE);
+			return 1;
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			return 1;
+		}
+		
+		return new BatchMode(outputDirectory, tags).generate(sources, jobs) ? 0 : 2;
+	}
+	
+	/**
+	 * Generates a playlist for each of given sources, reporting each written playlist to the standard
+	 * output and each failure to the standard error.
+	 * 
+	 * @param sources Album directories or album list files.
+	 * @param jobs Maximum number of playlists generated at once (positive).
+	 * @return Whether all playlists have been written.
+	 */
+	public boolean generate(List<File> sources, int jobs) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, sources.size()));
+		List<Future<String>> results = new ArrayList<>(sources.size());
+		
+		for(File source : sources)
+			results.add(executor.submit(() -> generate(source)));
+		executor.shutdown();
+		
+		boolean success = true;
+		for(int i = 0; i < results.size(); i++) {
+			try {
+				System.out.println(results.get(i).get());
+			} catch(ExecutionException e) {
+				System.err.println(sources.get(i) + ": " + e.getCause());
+				success = false;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		
+		if(tagger != null)
+			tagger.storeCache();
+		
+		return success;
+	}
+	
+	/**
+	 * @param source Album directory or album list file.
+	 * @return Report of the written playlist.
+	 * @throws Exception I/O error.
+	 */
+	private String generate(File source) throws Exception {
+		List<File> albums = albumsOf(source);
+		
+		List<Track> tracks = new ArrayList<>();
+		for(List<Track> tracklist : scanner.scan(albums))
+			tracks.addAll(tracklist);
+		
+		if(tagger != null)
+			tracks = tagger.tag(tracks);
+		
+		String title = titleOf(source);
+		File written = XMLPlaylistUtils.createPlaylist(new Playlist(title, tracks), new File(outputDirectory, title));
+		
+		return written + ": " + albums.size() + " albums, " + tracks.size() + " tracks";
+	}
+	
+	/**
+	 * @return Albums of given source; the source itself if it is a directory.
+	 */
+	private static List<File> albumsOf(File source) throws IOException {
+		List<File> albums = new ArrayList<>();
+		
+		if(source.isDirectory()) {
+			albums.add(source);
+			return albums;
+		}
+		
+		for(String line : Files.readAllLines(source.toPath(), StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#"))
+				continue;
+			
+			File album = new File(line);
+			if(!album.isDirectory())
+				throw new IOException("Album " + album + " doesn't exist!");
+			albums.add(album);
+		}
+		
+		return albums;
+	}
+	
+	/**
+	 * Checks that no two sources result in the same playlist, since they would be written to the same file;
+	 * titles are compared ignoring case, as file names are on some file systems.
+	 * 
+	 * @param sources Album directories or album list files.
+	 * @throws IllegalArgumentException In case any source has no title, or any two sources have the same one.
+	 */
+	private static void checkTitles(List<File> sources) {
+		Map<String, File> titles = new HashMap<>();
+		
+		for(File source : sources) {
+			File other = titles.put(titleOf(source).toLowerCase(Locale.ROOT), source);
+			if(other != null)
+				throw new IllegalArgumentException("Sources " + other + " and " + source
+						+ " would both be written to " + titleOf(source) + Constants.VLC_PLAYLIST_EXTENSION);
+		}
+	}
+	
+	/**
+	 * @return Name of given source without the extension, if it is a list file.
+	 * @throws IllegalArgumentException In case the source has no name, i.e. is a root directory.
+	 */
+	private static String titleOf(File source) {
+		Path fileName = source.getAbsoluteFile().toPath().normalize().getFileName();
+		if(fileName == null)
+			throw new IllegalArgumentException("Source " + source + " has no name to give its playlist!");
+		
+		String name = fileName.toString();
+		int extensionIndex = name.lastIndexOf('.');
+		
+		if(source.isDirectory() || extensionIndex <= 0)
+			return name;
+		
+		return name.substring(0, extensionIndex);
+	}
+
+}
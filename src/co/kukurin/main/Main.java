@@ -10,20 +10,29 @@ import co.kukurin.gui.inputscreen.InputScreenWindow;
 import co.kukurin.gui.main.MainWindow;
 import co.kukurin.utils.Constants;
 import co.kukurin.utils.PropertyManager;
+import co.kukurin.utils.profiling.EdtWatchdog;
 import co.kukurin.utils.layout.SwingUtils;
 
 /**
  * Program entry point; simply checks for properties and calls the {@link MainWindow} class.
+ * <p>
+ * An {@link EdtWatchdog} is installed before any window is shown. If any arguments are given, playlists are
+ * generated by {@link BatchMode} instead, without initializing Swing.
  * @author Toni Kukurin
  *
  */
 public class Main {
 	
 	/**
-	 * @param args Not used.
+	 * @param args Command line arguments of {@link BatchMode}; none to start the GUI.
 	 */
 	public static void main(String[] args) throws InterruptedException, InvocationTargetException {
+		if(args.length > 0)
+			System.exit(BatchMode.run(args));
+		
 		SwingUtils.setWindowsLookAndFeel();
+		EdtWatchdog.install();
+		
 		File propertyFile = new File(Constants.PROPERTY_LOCATION);
 		
 		if(!propertyFile.exists()) {
@@ -0,0 +1,98 @@
+package co.kukurin.metadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Positional reader over a file, used by the tag readers to fetch the few regions of a file they need.
+ * <p>
+ * Small reads are served from a single cached window, so walking through consecutive headers costs one
+ * read per window rather than one per header, while large regions in between (e.g. embedded pictures or
+ * audio data) are skipped without being read at all.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+class ChannelSource implements Closeable {
+	
+	private static final int WINDOW_SIZE = 4096;
+	
+	private final FileChannel channel;
+	private final long size;
+	
+	private ByteBuffer window;
+	private long windowStart;
+	
+	public ChannelSource(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.window = ByteBuffer.allocate(0);
+	}
+	
+	/**
+	 * @return File size in bytes.
+	 */
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * Reads given region of the file; the region is cut short at the end of the file.
+	 * 
+	 * @param position Start of the region.
+	 * @param length Length of the region.
+	 * @return Big-endian buffer whose position is 0 and whose limit is the number of bytes read.
+	 * @throws IOException I/O error.
+	 */
+	public ByteBuffer read(long position, int length) throws IOException {
+		if(position < 0 || position >= size)
+			return ByteBuffer.allocate(0);
+		
+		length = (int) Math.min(length, size - position);
+		
+		if(position < windowStart || position + length > windowStart + window.limit()) {
+			if(length > WINDOW_SIZE)
+				return fill(position, length);
+			
+			window = fill(position, (int) Math.min(WINDOW_SIZE, size - position));
+			windowStart = position;
+		}
+		
+		ByteBuffer region = window.duplicate();
+		region.position((int) (position - windowStart));
+		region.limit(region.position() + Math.min(length, region.remaining()));
+		return region.slice();
+	}
+	
+	private ByteBuffer fill(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				break;
+		}
+		
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * @return Given bytes of the buffer as an ISO-8859-1 string; cut short at the buffer's limit.
+	 */
+	static String ascii(ByteBuffer buffer, int index, int length) {
+		char[] chars = new char[Math.max(0, Math.min(length, buffer.limit() - index))];
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = (char) (buffer.get(index + i) & 0xFF);
+		return new String(chars);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
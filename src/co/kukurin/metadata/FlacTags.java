@@ -0,0 +1,133 @@
+package co.kukurin.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reader of FLAC metadata: the duration from the STREAMINFO block, and tags from the VORBIS_COMMENT block.
+ * <p>
+ * Metadata blocks are walked by their headers, and all other blocks (e.g. pictures and seek tables) are
+ * skipped without being read.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+class FlacTags {
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private FlacTags() {}
+	
+	static final String MAGIC = "fLaC";
+	
+	private static final int STREAMINFO = 0;
+	private static final int VORBIS_COMMENT = 4;
+	private static final int INVALID = 127;
+	
+	private static final int STREAMINFO_LENGTH = 34;
+	
+	/**
+	 * Only this many bytes of the comment block are read; comments past them (usually embedded pictures)
+	 * are ignored.
+	 */
+	private static final int MAX_COMMENT_LENGTH = 1 << 16;
+	
+	/**
+	 * @param source File.
+	 * @param start Position of the stream marker.
+	 * @return Tags and duration of the stream.
+	 * @throws IOException I/O error.
+	 */
+	static TrackMetadata read(ChannelSource source, long start) throws IOException {
+		long position = start + MAGIC.length();
+		long duration = 0;
+		TrackMetadata tags = TrackMetadata.EMPTY;
+		boolean last = false;
+		
+		while(!last) {
+			ByteBuffer header = source.read(position, 4);
+			if(header.remaining() < 4)
+				break;
+			
+			last = (header.get(0) & 0x80) != 0;
+			int type = header.get(0) & 0x7F;
+			int length = header.getInt(0) & 0xFFFFFF;
+			position += 4;
+			
+			if(type == INVALID)
+				break;
+			
+			if(type == STREAMINFO && length >= STREAMINFO_LENGTH) {
+				duration = streamDuration(source.read(position, STREAMINFO_LENGTH));
+			} else if(type == VORBIS_COMMENT) {
+				ByteBuffer block = source.read(position, Math.min(length, MAX_COMMENT_LENGTH));
+				tags = comments(block.order(ByteOrder.LITTLE_ENDIAN));
+			}
+			
+			position += length;
+		}
+		
+		return tags.orElse(new TrackMetadata(null, null, null, 0, duration));
+	}
+	
+	private static long streamDuration(ByteBuffer info) {
+		if(info.remaining() < STREAMINFO_LENGTH)
+			return 0;
+		
+		// 20 bits of sample rate, 3 bits of channels, 5 bits of sample size, 36 bits of total samples
+		long bits = info.getLong(10);
+		long sampleRate = bits >>> 44;
+		long samples = bits & 0xFFFFFFFFFL;
+		
+		return sampleRate == 0 ? 0 : samples * 1000 / sampleRate;
+	}
+	
+	/**
+	 * Parses Vorbis comments, stopping at the first one which doesn't fit into given block.
+	 */
+	private static TrackMetadata comments(ByteBuffer block) {
+		String artist = null, album = null, title = null, track = null;
+		
+		if(block.remaining() < 8)
+			return TrackMetadata.EMPTY;
+		
+		long vendorLength = block.getInt(0) & 0xFFFFFFFFL;
+		if(vendorLength + 8 > block.limit())
+			return TrackMetadata.EMPTY;
+		
+		int position = (int) vendorLength + 4;
+		long count = block.getInt(position) & 0xFFFFFFFFL;
+		position += 4;
+		
+		for(long i = 0; i < count && position + 4 <= block.limit(); i++) {
+			long length = block.getInt(position) & 0xFFFFFFFFL;
+			position += 4;
+			if(position + length > block.limit())
+				break;
+			
+			String comment = new String(block.array(), block.arrayOffset() + position, (int) length,
+					StandardCharsets.UTF_8);
+			position += length;
+			
+			int separator = comment.indexOf('=');
+			if(separator < 0)
+				continue;
+			
+			String value = comment.substring(separator + 1);
+			switch(comment.substring(0, separator).toUpperCase(Locale.ROOT)) {
+			case "ARTIST": if(artist == null) artist = value; break;
+			case "ALBUM": if(album == null) album = value; break;
+			case "TITLE": if(title == null) title = value; break;
+			case "TRACKNUMBER": if(track == null) track = value; break;
+			default: break;
+			}
+		}
+		
+		return new TrackMetadata(artist, album, title, TrackMetadata.parseTrackNumber(track), 0);
+	}
+
+}
@@ -0,0 +1,264 @@
+package co.kukurin.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reader of ID3v2 tags at the start and ID3v1 tags at the end of a file.
+ * <p>
+ * ID3v2 frames are walked by their headers, and only the contents of the few text frames of interest are
+ * read; all other frames, including embedded pictures, are skipped. Versions 2.2, 2.3 and 2.4 are
+ * supported, except for compressed or encrypted frames, and for 2.2 and 2.3 tags which are unsynchronised
+ * as a whole.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+class Id3Tags {
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private Id3Tags() {}
+	
+	static final int V2_HEADER_LENGTH = 10;
+	static final int V1_LENGTH = 128;
+	
+	/**
+	 * Text frames longer than this aren't read.
+	 */
+	private static final int MAX_FRAME_LENGTH = 1 << 14;
+	
+	private static final String ARTIST = "artist";
+	private static final String ALBUM = "album";
+	private static final String TITLE = "title";
+	private static final String TRACK = "track";
+	private static final String LENGTH = "length";
+	
+	/**
+	 * Fields of interest by frame id, for both three-character (2.2) and four-character ids.
+	 */
+	private static final Map<String, String> FRAMES = new HashMap<>();
+	
+	static {
+		FRAMES.put("TPE1", ARTIST);
+		FRAMES.put("TALB", ALBUM);
+		FRAMES.put("TIT2", TITLE);
+		FRAMES.put("TRCK", TRACK);
+		FRAMES.put("TLEN", LENGTH);
+		FRAMES.put("TP1", ARTIST);
+		FRAMES.put("TAL", ALBUM);
+		FRAMES.put("TT2", TITLE);
+		FRAMES.put("TRK", TRACK);
+		FRAMES.put("TLE", LENGTH);
+	}
+	
+	private static final Charset[] ENCODINGS = { StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16,
+			StandardCharsets.UTF_16BE, StandardCharsets.UTF_8 };
+	
+	/**
+	 * @param source File.
+	 * @param position Position the tag may start at.
+	 * @return Length of the ID3v2 tag at given position, including its header and footer; 0 if there is none.
+	 * @throws IOException I/O error.
+	 */
+	static long v2Length(ChannelSource source, long position) throws IOException {
+		ByteBuffer header = source.read(position, V2_HEADER_LENGTH);
+		if(!isV2Header(header))
+			return 0;
+		
+		boolean footer = (header.get(5) & 0x10) != 0;
+		return V2_HEADER_LENGTH + syncsafe(header, 6) + (footer ? V2_HEADER_LENGTH : 0);
+	}
+	
+	/**
+	 * @param source File.
+	 * @return Tags of the ID3v2 tag at the start of the file; {@link TrackMetadata#EMPTY} if there is none.
+	 * @throws IOException I/O error.
+	 */
+	static TrackMetadata readV2(ChannelSource source) throws IOException {
+		ByteBuffer header = source.read(0, V2_HEADER_LENGTH);
+		if(!isV2Header(header))
+			return TrackMetadata.EMPTY;
+		
+		int major = header.get(3);
+		int flags = header.get(5) & 0xFF;
+		long end = V2_HEADER_LENGTH + syncsafe(header, 6);
+		
+		if(major < 4 && (flags & 0x80) != 0)
+			return TrackMetadata.EMPTY;
+		
+		long position = V2_HEADER_LENGTH;
+		
+		if((flags & 0x40) != 0 && major > 2) {
+			ByteBuffer extended = source.read(position, 4);
+			if(extended.remaining() < 4)
+				return TrackMetadata.EMPTY;
+			
+			// the size includes itself only as of 2.4
+			position += major == 4 ? syncsafe(extended, 0) : 4 + (extended.getInt(0) & 0xFFFFFFFFL);
+		}
+		
+		int headerLength = major == 2 ? 6 : 10;
+		Map<String, String> fields = new HashMap<>();
+		
+		while(position + headerLength <= end) {
+			ByteBuffer frameHeader = source.read(position, headerLength);
+			if(frameHeader.remaining() < headerLength || frameHeader.get(0) == 0)
+				break; // padding
+			
+			String id;
+			long length;
+			int frameFlags = 0;
+			
+			if(major == 2) {
+				id = ChannelSource.ascii(frameHeader, 0, 3);
+				length = (frameHeader.getInt(2) & 0xFFFFFF);
+			} else {
+				id = ChannelSource.ascii(frameHeader, 0, 4);
+				length = major == 4 ? syncsafe(frameHeader, 4) : frameHeader.getInt(4) & 0xFFFFFFFFL;
+				frameFlags = frameHeader.get(9) & 0xFF;
+			}
+			
+			position += headerLength;
+			if(length < 0 || position + length > end)
+				break;
+			
+			String field = FRAMES.get(id);
+			if(field != null && length <= MAX_FRAME_LENGTH && !fields.containsKey(field)) {
+				String text = frameText(source.read(position, (int) length), major, frameFlags);
+				if(text != null)
+					fields.put(field, text);
+			}
+			
+			position += length;
+		}
+		
+		long duration = 0;
+		try {
+			if(fields.containsKey(LENGTH))
+				duration = Long.parseLong(fields.get(LENGTH).trim());
+		} catch(NumberFormatException ignore) {}
+		
+		return new TrackMetadata(fields.get(ARTIST), fields.get(ALBUM), fields.get(TITLE),
+				TrackMetadata.parseTrackNumber(fields.get(TRACK)), duration);
+	}
+	
+	/**
+	 * @param source File.
+	 * @return True if the file ends with an ID3v1 tag.
+	 * @throws IOException I/O error.
+	 */
+	static boolean hasV1(ChannelSource source) throws IOException {
+		ByteBuffer tag = source.read(source.size() - V1_LENGTH, 3);
+		return tag.remaining() == 3 && ChannelSource.ascii(tag, 0, 3).equals("TAG");
+	}
+	
+	/**
+	 * @param source File.
+	 * @return Tags of the ID3v1 tag at the end of the file; {@link TrackMetadata#EMPTY} if there is none.
+	 * @throws IOException I/O error.
+	 */
+	static TrackMetadata readV1(ChannelSource source) throws IOException {
+		if(!hasV1(source))
+			return TrackMetadata.EMPTY;
+		
+		ByteBuffer tag = source.read(source.size() - V1_LENGTH, V1_LENGTH);
+		
+		// ID3v1.1 keeps the track number in the last byte of the comment
+		int track = tag.get(125) == 0 ? tag.get(126) & 0xFF : 0;
+		
+		return new TrackMetadata(latin1(tag, 33, 30), latin1(tag, 63, 30), latin1(tag, 3, 30), track, 0);
+	}
+	
+	private static boolean isV2Header(ByteBuffer header) {
+		return header.remaining() >= V2_HEADER_LENGTH && ChannelSource.ascii(header, 0, 3).equals("ID3")
+				&& header.get(3) >= 2 && header.get(3) <= 4 && syncsafe(header, 6) >= 0;
+	}
+	
+	/**
+	 * @return Text of a text frame, up to the first terminator; null if it can't be decoded.
+	 */
+	private static String frameText(ByteBuffer content, int major, int frameFlags) {
+		if(major == 4) {
+			if((frameFlags & 0x0C) != 0)
+				return null; // compressed or encrypted
+			
+			int skip = ((frameFlags & 0x40) != 0 ? 1 : 0) + ((frameFlags & 0x01) != 0 ? 4 : 0);
+			if(skip > content.remaining())
+				return null;
+			
+			content.position(skip);
+			content = content.slice();
+			
+			if((frameFlags & 0x02) != 0)
+				content = resynchronise(content);
+		} else if(major == 3 && (frameFlags & 0xC0) != 0) {
+			return null; // compressed or encrypted
+		} else if(major == 3 && (frameFlags & 0x20) != 0) {
+			if(content.remaining() < 1)
+				return null;
+			
+			content.position(1);
+			content = content.slice();
+		}
+		
+		if(content.remaining() < 1 || (content.get(0) & 0xFF) >= ENCODINGS.length)
+			return null;
+		
+		Charset charset = ENCODINGS[content.get(0)];
+		content.position(1);
+		
+		String text = charset.decode(content).toString();
+		int terminator = text.indexOf('\u0000');
+		return terminator >= 0 ? text.substring(0, terminator) : text;
+	}
+	
+	/**
+	 * Reverses unsynchronisation, i.e. drops each zero byte following an 0xFF byte.
+	 */
+	private static ByteBuffer resynchronise(ByteBuffer content) {
+		ByteBuffer result = ByteBuffer.allocate(content.remaining());
+		boolean afterFF = false;
+		
+		while(content.hasRemaining()) {
+			byte b = content.get();
+			if(!(afterFF && b == 0))
+				result.put(b);
+			afterFF = b == (byte) 0xFF;
+		}
+		
+		result.flip();
+		return result;
+	}
+	
+	/**
+	 * @return 28-bit integer stored in four bytes of seven bits each; -1 if any byte has its top bit set.
+	 */
+	private static int syncsafe(ByteBuffer buffer, int index) {
+		int value = 0;
+		
+		for(int i = 0; i < 4; i++) {
+			int b = buffer.get(index + i) & 0xFF;
+			if(b >= 0x80)
+				return -1;
+			value = (value << 7) | b;
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * @return ISO-8859-1 string of given field, up to the first zero byte.
+	 */
+	private static String latin1(ByteBuffer buffer, int index, int length) {
+		String s = ChannelSource.ascii(buffer, index, length);
+		int terminator = s.indexOf('\u0000');
+		return terminator >= 0 ? s.substring(0, terminator) : s;
+	}
+
+}
@@ -0,0 +1,306 @@
+package co.kukurin.metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.kukurin.utils.Constants;
+import co.kukurin.utils.PropertyManager;
+
+/**
+ * Persistent cache of track metadata, keyed by the absolute path of the track's file along with its size
+ * and last modification time.
+ * <p>
+ * Entries are held in memory in least recently used order, bounded by the cache capacity, and stored in
+ * {@link Constants#METADATA_CACHE_LOCATION}, next to the property file, in the same order; once the capacity
+ * is exceeded, least recently used entries are dropped. Directories, artists and albums are written once
+ * per file rather than once per entry, which keeps the stored cache compact.
+ * <p>
+ * A lookup costs a single stat call, so tags of unchanged files are never read again; a file whose size or
+ * modification time has changed since it was cached is considered a miss.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class MetadataCache {
+	
+	/**
+	 * Default capacity, used if {@link Constants#PROPERTY_METADATA_CACHE_SIZE} is missing or invalid.
+	 */
+	public static final int DEFAULT_CAPACITY = 200_000;
+	
+	private static final int MAGIC = 0x4D455441;
+	private static final int VERSION = 1;
+	
+	/**
+	 * Cache shared by the application; see {@link #open()}.
+	 */
+	private static MetadataCache shared;
+	
+	private final Path location;
+	private final int capacity;
+	
+	/**
+	 * Entries by absolute path, in access order; null until loaded.
+	 */
+	private LinkedHashMap<String, Entry> entries;
+	
+	/**
+	 * Whether entries have changed since they were loaded or stored.
+	 */
+	private boolean modified;
+	
+	/**
+	 * Held while storing, so concurrent stores don't share the temporary file.
+	 */
+	private final Object storeLock = new Object();
+	
+	private static class Entry {
+		private final long size;
+		private final long lastModified;
+		private final TrackMetadata metadata;
+		
+		public Entry(long size, long lastModified, TrackMetadata metadata) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.metadata = metadata;
+		}
+	}
+	
+	/**
+	 * @param location Location the cache is stored to; loaded from on first use, if it exists.
+	 * @param capacity Maximum number of entries (positive).
+	 */
+	public MetadataCache(Path location, int capacity) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive!");
+		
+		this.location = location;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Returns the cache shared by the application, stored in {@link Constants#METADATA_CACHE_LOCATION} and
+	 * bounded by {@link Constants#PROPERTY_METADATA_CACHE_SIZE}. The stored cache is only loaded on first use.
+	 * 
+	 * @return Shared cache.
+	 */
+	public static synchronized MetadataCache open() {
+		if(shared == null)
+			shared = new MetadataCache(Paths.get(Constants.METADATA_CACHE_LOCATION),
+					PropertyManager.getPositiveInt(Constants.PROPERTY_METADATA_CACHE_SIZE, DEFAULT_CAPACITY));
+		
+		return shared;
+	}
+	
+	/**
+	 * Returns metadata of given file, reading its tags using {@link TagReader} only if the file is not
+	 * cached, or has changed since it was.
+	 * 
+	 * @param file Audio file.
+	 * @return Metadata of given file.
+	 * @throws IOException I/O error.
+	 */
+	public TrackMetadata read(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		long lastModified = attrs.lastModifiedTime().toMillis();
+		
+		synchronized(this) {
+			Entry entry = entries().get(path);
+			if(entry != null && entry.size == attrs.size() && entry.lastModified == lastModified)
+				return entry.metadata;
+		}
+		
+		// read outside of the lock, so files are read in parallel
+		TrackMetadata metadata = TagReader.read(file);
+		
+		synchronized(this) {
+			entries().put(path, new Entry(attrs.size(), lastModified, metadata));
+			modified = true;
+		}
+		
+		return metadata;
+	}
+	
+	/**
+	 * @return Number of cached entries.
+	 */
+	public synchronized int size() {
+		return entries().size();
+	}
+	
+	/**
+	 * Stores the cache if it has changed since it was loaded. The cache is first written to a temporary
+	 * file, so an interrupted write never leaves a corrupt cache behind.
+	 * <p>
+	 * Entries are copied while holding the cache's lock, and written without it, so lookups are not blocked
+	 * by writing.
+	 * 
+	 * @throws IOException I/O error.
+	 */
+	public void store() throws IOException {
+		synchronized(storeLock) {
+			List<Map.Entry<String, Entry>> stored;
+			
+			synchronized(this) {
+				if(!modified)
+					return;
+				
+				stored = new ArrayList<>(entries.size());
+				for(Map.Entry<String, Entry> entry : entries.entrySet())
+					stored.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+				modified = false;
+			}
+			
+			try {
+				write(stored);
+			} catch(IOException e) {
+				synchronized(this) {
+					modified = true;
+				}
+				throw e;
+			}
+		}
+	}
+	
+	private void write(List<Map.Entry<String, Entry>> stored) throws IOException {
+		Map<String, Integer> directories = new LinkedHashMap<>();
+		Map<String, Integer> names = new LinkedHashMap<>();
+		
+		for(Map.Entry<String, Entry> entry : stored) {
+			index(directories, directoryOf(entry.getKey()));
+			index(names, entry.getValue().metadata.getArtist());
+			index(names, entry.getValue().metadata.getAlbum());
+		}
+		
+		Path temp = location.resolveSibling(location.getFileName() + ".tmp");
+		
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			
+			writeTable(out, directories);
+			writeTable(out, names);
+			
+			out.writeInt(stored.size());
+			for(Map.Entry<String, Entry> e : stored) {
+				String path = e.getKey();
+				Entry entry = e.getValue();
+				TrackMetadata metadata = entry.metadata;
+				
+				out.writeInt(directories.get(directoryOf(path)));
+				out.writeUTF(path.substring(directoryOf(path).length()));
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				
+				out.writeInt(metadata.getArtist() == null ? -1 : names.get(metadata.getArtist()));
+				out.writeInt(metadata.getAlbum() == null ? -1 : names.get(metadata.getAlbum()));
+				out.writeUTF(metadata.getTitle() == null ? "" : metadata.getTitle());
+				out.writeInt(metadata.getTrackNumber());
+				out.writeLong(metadata.getDurationMillis());
+			}
+		}
+		
+		Files.move(temp, location, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * @return Entries, loading them from {@link #location} on first call; a missing or corrupt stored cache
+	 * results in an empty one.
+	 */
+	@SuppressWarnings("serial")
+	private LinkedHashMap<String, Entry> entries() {
+		if(entries != null)
+			return entries;
+		
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+		
+		if(Files.exists(location)) {
+			try {
+				load();
+			} catch(IOException e) {
+				// corrupt or outdated cache, rebuilt as tracks are read
+				entries.clear();
+			}
+		}
+		
+		modified = false;
+		return entries;
+	}
+	
+	private void load() throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(location)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Invalid metadata cache format!");
+			
+			List<String> directories = readTable(in);
+			List<String> names = readTable(in);
+			
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				String path = directories.get(in.readInt()) + in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				
+				int artist = in.readInt();
+				int album = in.readInt();
+				String title = in.readUTF();
+				TrackMetadata metadata = new TrackMetadata(artist < 0 ? null : names.get(artist),
+						album < 0 ? null : names.get(album), title.isEmpty() ? null : title, in.readInt(),
+						in.readLong());
+				
+				entries.put(path, new Entry(size, lastModified, metadata));
+			}
+		} catch(IndexOutOfBoundsException e) {
+			throw new IOException("Invalid metadata cache format!", e);
+		}
+	}
+	
+	/**
+	 * @return Directory part of given path, including the trailing separator.
+	 */
+	private static String directoryOf(String path) {
+		return path.substring(0, path.lastIndexOf(File.separatorChar) + 1);
+	}
+	
+	private static void index(Map<String, Integer> table, String value) {
+		if(value != null && !table.containsKey(value))
+			table.put(value, table.size());
+	}
+	
+	private static void writeTable(DataOutputStream out, Map<String, Integer> table) throws IOException {
+		out.writeInt(table.size());
+		for(String value : table.keySet())
+			out.writeUTF(value);
+	}
+	
+	private static List<String> readTable(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<String> table = new ArrayList<>(count);
+		
+		for(int i = 0; i < count; i++)
+			table.add(in.readUTF());
+		
+		return table;
+	}
+
+}
@@ -0,0 +1,150 @@
+package co.kukurin.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Duration estimate of MPEG audio (e.g. MP3) from its first frame.
+ * <p>
+ * Variable bitrate files usually carry the total number of frames in a Xing/Info or VBRI header within the
+ * first frame; otherwise, the bitrate of the first frame is assumed to be constant.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+class MpegAudio {
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private MpegAudio() {}
+	
+	/**
+	 * Number of bytes searched for the first frame.
+	 */
+	private static final int SEARCH_LENGTH = 8192;
+	
+	private static final int MPEG1 = 3;
+	private static final int LAYER1 = 3;
+	private static final int LAYER2 = 2;
+	
+	private static final int[] SAMPLE_RATES = { 44100, 48000, 32000 };
+	
+	// kbps, by bitrate index
+	private static final int[] V1_L1 = { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 };
+	private static final int[] V1_L2 = { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 };
+	private static final int[] V1_L3 = { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 };
+	private static final int[] V2_L1 = { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 };
+	private static final int[] V2_L23 = { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 };
+	
+	/**
+	 * @param source File.
+	 * @param start Position the audio starts at, i.e. past any leading tags.
+	 * @param end Position the audio ends at, i.e. before any trailing tags.
+	 * @return Duration in milliseconds; 0 if no frame has been found.
+	 * @throws IOException I/O error.
+	 */
+	static long durationMillis(ChannelSource source, long start, long end) throws IOException {
+		ByteBuffer data = source.read(start, SEARCH_LENGTH);
+		
+		for(int i = 0; i + 4 <= data.limit(); i++) {
+			int header = data.getInt(i);
+			int frameLength = frameLength(header);
+			if(frameLength <= 0)
+				continue;
+			
+			// a second frame right after the first one makes a false sync unlikely
+			if(i + frameLength + 4 <= data.limit() && frameLength(data.getInt(i + frameLength)) <= 0)
+				continue;
+			
+			int version = (header >>> 19) & 3;
+			int channelMode = (header >>> 6) & 3;
+			int sampleRate = sampleRate(header);
+			int samples = samplesPerFrame(header);
+			
+			int sideInfo = version == MPEG1 ? (channelMode == 3 ? 17 : 32) : (channelMode == 3 ? 9 : 17);
+			long frames = xingFrames(data, i + 4 + sideInfo);
+			if(frames <= 0)
+				frames = vbriFrames(data, i + 4 + 32);
+			
+			if(frames > 0)
+				return frames * samples * 1000 / sampleRate;
+			
+			// constant bitrate; bits per millisecond equal the bitrate in kbps
+			return (end - start - i) * 8 / bitrate(header);
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * @return Length of the frame with given header in bytes; 0 if the header is invalid.
+	 */
+	private static int frameLength(int header) {
+		if((header & 0xFFE00000) != 0xFFE00000)
+			return 0;
+		
+		int version = (header >>> 19) & 3;
+		int layer = (header >>> 17) & 3;
+		int bitrateIndex = (header >>> 12) & 0xF;
+		int sampleRateIndex = (header >>> 10) & 3;
+		
+		if(version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3)
+			return 0;
+		
+		int padding = (header >>> 9) & 1;
+		int bitrate = bitrate(header) * 1000;
+		
+		if(layer == LAYER1)
+			return (12 * bitrate / sampleRate(header) + padding) * 4;
+		
+		return samplesPerFrame(header) / 8 * bitrate / sampleRate(header) + padding;
+	}
+	
+	private static int bitrate(int header) {
+		int version = (header >>> 19) & 3;
+		int layer = (header >>> 17) & 3;
+		int index = (header >>> 12) & 0xF;
+		
+		if(version == MPEG1)
+			return (layer == LAYER1 ? V1_L1 : layer == LAYER2 ? V1_L2 : V1_L3)[index];
+		return (layer == LAYER1 ? V2_L1 : V2_L23)[index];
+	}
+	
+	private static int sampleRate(int header) {
+		int version = (header >>> 19) & 3;
+		int rate = SAMPLE_RATES[(header >>> 10) & 3];
+		
+		// MPEG 2 halves the rates, MPEG 2.5 quarters them
+		return version == MPEG1 ? rate : version == 2 ? rate / 2 : rate / 4;
+	}
+	
+	private static int samplesPerFrame(int header) {
+		int version = (header >>> 19) & 3;
+		int layer = (header >>> 17) & 3;
+		
+		if(layer == LAYER1)
+			return 384;
+		return layer == LAYER2 || version == MPEG1 ? 1152 : 576;
+	}
+	
+	private static long xingFrames(ByteBuffer data, int index) {
+		if(index + 12 > data.limit())
+			return 0;
+		
+		String tag = ChannelSource.ascii(data, index, 4);
+		if(!tag.equals("Xing") && !tag.equals("Info"))
+			return 0;
+		
+		boolean hasFrames = (data.getInt(index + 4) & 1) != 0;
+		return hasFrames ? data.getInt(index + 8) & 0xFFFFFFFFL : 0;
+	}
+	
+	private static long vbriFrames(ByteBuffer data, int index) {
+		if(index + 18 > data.limit() || !ChannelSource.ascii(data, index, 4).equals("VBRI"))
+			return 0;
+		
+		return data.getInt(index + 14) & 0xFFFFFFFFL;
+	}
+
+}
@@ -0,0 +1,143 @@
+package co.kukurin.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of RIFF files (WAVE and AVI): tags from the LIST/INFO chunk, and the duration from the WAVE format
+ * and data chunks or the AVI main header.
+ * <p>
+ * Top-level chunks are walked by their headers, so the audio or video data is never read.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+class RiffTags {
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private RiffTags() {}
+	
+	static final String MAGIC = "RIFF";
+	
+	private static final int CHUNK_HEADER_LENGTH = 8;
+	
+	/**
+	 * Only this many bytes of the INFO list are read.
+	 */
+	private static final int MAX_INFO_LENGTH = 1 << 14;
+	
+	/**
+	 * @param source File starting with {@link #MAGIC}.
+	 * @return Tags and duration of the file.
+	 * @throws IOException I/O error.
+	 */
+	static TrackMetadata read(ChannelSource source) throws IOException {
+		ByteBuffer header = source.read(0, 12).order(ByteOrder.LITTLE_ENDIAN);
+		if(header.remaining() < 12)
+			return TrackMetadata.EMPTY;
+		
+		boolean avi = ChannelSource.ascii(header, 8, 4).equals("AVI ");
+		long end = Math.min(source.size(), CHUNK_HEADER_LENGTH + (header.getInt(4) & 0xFFFFFFFFL));
+		long position = 12;
+		
+		TrackMetadata tags = TrackMetadata.EMPTY;
+		long byteRate = 0, dataLength = 0, duration = 0;
+		
+		while(position + CHUNK_HEADER_LENGTH <= end) {
+			ByteBuffer chunk = source.read(position, CHUNK_HEADER_LENGTH + 4).order(ByteOrder.LITTLE_ENDIAN);
+			if(chunk.remaining() < CHUNK_HEADER_LENGTH)
+				break;
+			
+			String id = ChannelSource.ascii(chunk, 0, 4);
+			long length = Math.min(chunk.getInt(4) & 0xFFFFFFFFL, end - position - CHUNK_HEADER_LENGTH);
+			long body = position + CHUNK_HEADER_LENGTH;
+			String listType = chunk.remaining() >= 12 ? ChannelSource.ascii(chunk, 8, 4) : "";
+			
+			if(id.equals("fmt ") && length >= 12) {
+				byteRate = source.read(body + 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(0) & 0xFFFFFFFFL;
+			} else if(id.equals("data")) {
+				dataLength = length;
+			} else if(id.equals("LIST") && listType.equals("INFO")) {
+				ByteBuffer info = source.read(body + 4, (int) Math.min(length - 4, MAX_INFO_LENGTH));
+				tags = info(info.order(ByteOrder.LITTLE_ENDIAN));
+			} else if(id.equals("LIST") && listType.equals("hdrl") && avi) {
+				duration = aviDuration(source.read(body + 4, 64).order(ByteOrder.LITTLE_ENDIAN));
+			}
+			
+			// chunks are padded to an even length
+			position = body + length + (length & 1);
+		}
+		
+		if(!avi && byteRate > 0)
+			duration = dataLength * 1000 / byteRate;
+		
+		return tags.orElse(new TrackMetadata(null, null, null, 0, duration));
+	}
+	
+	/**
+	 * @param hdrl Start of the header list, whose first chunk is the main AVI header.
+	 */
+	private static long aviDuration(ByteBuffer hdrl) {
+		if(hdrl.remaining() < CHUNK_HEADER_LENGTH + 20 || !ChannelSource.ascii(hdrl, 0, 4).equals("avih"))
+			return 0;
+		
+		long microsPerFrame = hdrl.getInt(CHUNK_HEADER_LENGTH) & 0xFFFFFFFFL;
+		long frames = hdrl.getInt(CHUNK_HEADER_LENGTH + 16) & 0xFFFFFFFFL;
+		return microsPerFrame * frames / 1000;
+	}
+	
+	private static TrackMetadata info(ByteBuffer info) {
+		String artist = null, album = null, title = null, track = null;
+		int position = 0;
+		
+		while(position + CHUNK_HEADER_LENGTH <= info.limit()) {
+			String id = ChannelSource.ascii(info, position, 4);
+			int length = info.getInt(position + 4);
+			position += CHUNK_HEADER_LENGTH;
+			
+			if(length < 0 || position + length > info.limit())
+				break;
+			
+			String value = text(info, position, length);
+			switch(id) {
+			case "IART": artist = value; break;
+			case "IPRD": album = value; break;
+			case "INAM": title = value; break;
+			case "ITRK": case "IPRT": track = value; break;
+			default: break;
+			}
+			
+			position += length + (length & 1);
+		}
+		
+		return new TrackMetadata(artist, album, title, TrackMetadata.parseTrackNumber(track), 0);
+	}
+	
+	/**
+	 * @return Zero-terminated string; decoded as UTF-8 if valid, and as ISO-8859-1 otherwise.
+	 */
+	private static String text(ByteBuffer buffer, int index, int length) {
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.position(index);
+		bytes.limit(index + length);
+		
+		String s;
+		try {
+			s = StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.decode(bytes).toString();
+		} catch(CharacterCodingException e) {
+			s = ChannelSource.ascii(buffer, index, length);
+		}
+		
+		int terminator = s.indexOf('\u0000');
+		return terminator >= 0 ? s.substring(0, terminator) : s;
+	}
+
+}
@@ -0,0 +1,54 @@
+package co.kukurin.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads tags and durations of audio files, touching only the headers (and, for MP3, the tail) of each
+ * file.
+ * <p>
+ * The format is recognized by its leading bytes rather than the file extension: FLAC and RIFF (WAVE and
+ * AVI) files by their markers, and anything else is treated as MPEG audio with optional ID3 tags. ID3v2
+ * tags in front of a FLAC stream are taken into account as well. Reads are positional, through
+ * {@link java.nio.channels.FileChannel}, and usually amount to a few kilobytes per file.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class TagReader {
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private TagReader() {}
+	
+	/**
+	 * @param file Audio file.
+	 * @return Tags found; {@link TrackMetadata#EMPTY} if there are none.
+	 * @throws IOException I/O error.
+	 */
+	public static TrackMetadata read(File file) throws IOException {
+		try(ChannelSource source = new ChannelSource(file.toPath())) {
+			long start = Id3Tags.v2Length(source, 0);
+			ByteBuffer magic = source.read(start, 4);
+			
+			if(magic.remaining() == 4 && ChannelSource.ascii(magic, 0, 4).equals(FlacTags.MAGIC))
+				return FlacTags.read(source, start).orElse(Id3Tags.readV2(source));
+			if(start == 0 && magic.remaining() == 4 && ChannelSource.ascii(magic, 0, 4).equals(RiffTags.MAGIC))
+				return RiffTags.read(source);
+			
+			boolean hasV1 = Id3Tags.hasV1(source);
+			long end = source.size() - (hasV1 ? Id3Tags.V1_LENGTH : 0);
+			TrackMetadata tags = Id3Tags.readV2(source);
+			
+			if(hasV1)
+				tags = tags.orElse(Id3Tags.readV1(source));
+			if(tags.getDurationMillis() == 0)
+				tags = tags.orElse(new TrackMetadata(null, null, null, 0, MpegAudio.durationMillis(source, start, end)));
+			
+			return tags;
+		}
+	}
+
+}
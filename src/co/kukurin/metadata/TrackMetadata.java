@@ -0,0 +1,165 @@
+package co.kukurin.metadata;
+
+import java.util.Objects;
+
+import co.kukurin.utils.StringPool;
+
+/**
+ * Immutable set of tags describing a track, as read from its file or from a playlist.
+ * <p>
+ * Every field is optional; missing strings are null, and missing numbers are 0. Artist and album names
+ * repeat across all tracks of an album, so they are shared through {@link #NAMES}.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class TrackMetadata {
+	
+	/**
+	 * Metadata of a track without any known tags.
+	 */
+	public static final TrackMetadata EMPTY = new TrackMetadata(null, null, null, 0, 0);
+	
+	private static final StringPool NAMES = new StringPool();
+	
+	private final String artist;
+	private final String album;
+	private final String title;
+	private final int trackNumber;
+	private final long durationMillis;
+	
+	/**
+	 * Blank strings and non-positive numbers are treated as missing.
+	 * 
+	 * @param artist Artist name.
+	 * @param album Album name.
+	 * @param title Track title.
+	 * @param trackNumber Track number within the album.
+	 * @param durationMillis Duration in milliseconds.
+	 */
+	public TrackMetadata(String artist, String album, String title, int trackNumber, long durationMillis) {
+		this.artist = pooled(artist);
+		this.album = pooled(album);
+		this.title = normalize(title);
+		this.trackNumber = Math.max(0, trackNumber);
+		this.durationMillis = Math.max(0, durationMillis);
+	}
+	
+	/**
+	 * @return Artist name; null if unknown.
+	 */
+	public String getArtist() {
+		return artist;
+	}
+	
+	/**
+	 * @return Album name; null if unknown.
+	 */
+	public String getAlbum() {
+		return album;
+	}
+	
+	/**
+	 * @return Track title; null if unknown.
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * @return Track number; 0 if unknown.
+	 */
+	public int getTrackNumber() {
+		return trackNumber;
+	}
+	
+	/**
+	 * @return Duration in milliseconds; 0 if unknown.
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+	
+	/**
+	 * @return True if none of the tags are known.
+	 */
+	public boolean isEmpty() {
+		return artist == null && album == null && title == null && trackNumber == 0 && durationMillis == 0;
+	}
+	
+	/**
+	 * @param fallback Metadata whose tags are used where these are missing.
+	 * @return Metadata combining both.
+	 */
+	public TrackMetadata orElse(TrackMetadata fallback) {
+		if(fallback.isEmpty())
+			return this;
+		if(isEmpty())
+			return fallback;
+		
+		return new TrackMetadata(
+				artist != null ? artist : fallback.artist,
+				album != null ? album : fallback.album,
+				title != null ? title : fallback.title,
+				trackNumber != 0 ? trackNumber : fallback.trackNumber,
+				durationMillis != 0 ? durationMillis : fallback.durationMillis);
+	}
+	
+	/**
+	 * @param value Track number as written in tags, e.g. "3" or "3/12".
+	 * @return Parsed track number; 0 if none.
+	 */
+	public static int parseTrackNumber(String value) {
+		if(value == null)
+			return 0;
+		
+		int number = 0;
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			
+			if(c >= '0' && c <= '9' && number < 100_000)
+				number = number * 10 + c - '0';
+			else if(i > 0 || !Character.isWhitespace(c))
+				break;
+		}
+		
+		return number;
+	}
+	
+	private static String normalize(String s) {
+		if(s == null)
+			return null;
+		
+		s = s.trim();
+		return s.isEmpty() ? null : s;
+	}
+	
+	private static String pooled(String s) {
+		s = normalize(s);
+		return s == null ? null : NAMES.intern(s);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(artist, album, title, trackNumber, durationMillis);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(!(obj instanceof TrackMetadata))
+			return false;
+		
+		TrackMetadata other = (TrackMetadata) obj;
+		return Objects.equals(artist, other.artist) && Objects.equals(album, other.album)
+				&& Objects.equals(title, other.title) && trackNumber == other.trackNumber
+				&& durationMillis == other.durationMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s - %s - %d. %s (%d ms)", artist, album, trackNumber, title, durationMillis);
+	}
+
+}
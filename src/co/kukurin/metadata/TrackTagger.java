@@ -0,0 +1,140 @@
+package co.kukurin.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import co.kukurin.utils.Constants;
+import co.kukurin.utils.PropertyManager;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Tags tracks in parallel using {@link TagReader}.
+ * <p>
+ * Tag reading is dominated by file system latency rather than computation, especially on network shares,
+ * so files are read by a pool twice the size of the album scanner's. Tracks which already carry metadata
+ * (e.g. as read from a playlist), tracks which aren't local files, and tracks whose files can't be read
+ * are left as they are.
+ * <p>
+ * Unless created without one, the tagger looks files up in a {@link MetadataCache} first. The cache is only
+ * stored on request (see {@link #storeCache()}), once all tracks of e.g. a whole playlist have been tagged,
+ * since each store rewrites the entire cache.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class TrackTagger {
+	
+	/**
+	 * Number of tracks below which a range of tracks is tagged by a single task.
+	 */
+	private static final int SPLIT_THRESHOLD = 16;
+	
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Cache files are looked up in; null if tags are always read from files.
+	 */
+	private final MetadataCache cache;
+	
+	/**
+	 * Creates a tagger using the shared {@link MetadataCache}, whose parallelism is twice the one read from
+	 * {@link Constants#PROPERTY_SCAN_PARALLELISM}, defaulting to twice the number of available processors if
+	 * the property is missing or invalid.
+	 */
+	public TrackTagger() {
+		this(2 * PropertyManager.getPositiveInt(Constants.PROPERTY_SCAN_PARALLELISM,
+				Runtime.getRuntime().availableProcessors()), MetadataCache.open());
+	}
+	
+	/**
+	 * @param parallelism Maximum number of files read at once (positive).
+	 * @param cache Cache files are looked up in; null if tags are to be always read from files.
+	 */
+	public TrackTagger(int parallelism, MetadataCache cache) {
+		if(parallelism <= 0)
+			throw new IllegalArgumentException("Parallelism must be positive!");
+		
+		this.pool = new ForkJoinPool(parallelism);
+		this.cache = cache;
+	}
+	
+	/**
+	 * @param tracks Tracks to tag.
+	 * @return Tagged tracks, in the same order as given.
+	 */
+	public List<Track> tag(List<Track> tracks) {
+		Track[] result = tracks.toArray(new Track[0]);
+		pool.invoke(new TagTask(result, 0, result.length));
+		
+		return Arrays.asList(result);
+	}
+	
+	/**
+	 * Stores the cache files are looked up in, if it has changed. Meant to be called off the event dispatch
+	 * thread once a batch of tracks has been tagged, rather than after each call to {@link #tag(List)}.
+	 */
+	public void storeCache() {
+		if(cache == null)
+			return;
+		
+		try {
+			cache.store();
+		} catch(IOException ignore) {
+			// the cache is only an optimization; entries are kept in memory and stored next time
+		}
+	}
+	
+	/**
+	 * @param track Track to tag.
+	 * @return Track with its file's metadata; the track itself if it can't be tagged.
+	 */
+	public static Track tag(Track track) {
+		return tag(track, null);
+	}
+	
+	private static Track tag(Track track, MetadataCache cache) {
+		if(track.getMetadata() != null || track.getFile() == null)
+			return track;
+		
+		try {
+			File file = track.getFile();
+			return track.withMetadata(cache == null ? TagReader.read(file) : cache.read(file));
+		} catch(IOException e) {
+			return track;
+		}
+	}
+	
+	/**
+	 * Tags a range of tracks in place, splitting it in halves while it is large.
+	 */
+	@SuppressWarnings("serial")
+	private class TagTask extends RecursiveAction {
+		
+		private final Track[] tracks;
+		private final int from;
+		private final int to;
+		
+		public TagTask(Track[] tracks, int from, int to) {
+			this.tracks = tracks;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= SPLIT_THRESHOLD) {
+				for(int i = from; i < to; i++)
+					tracks[i] = tag(tracks[i], cache);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(new TagTask(tracks, from, mid), new TagTask(tracks, mid, to));
+		}
+	}
+
+}
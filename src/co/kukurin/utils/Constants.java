@@ -3,8 +3,6 @@ package co.kukurin.utils;
 import java.util.Arrays;
 import java.util.List;
 
-import javax.swing.filechooser.FileNameExtensionFilter;
-
 /**
  * Static class used for general-purpose constants
  * 
@@ -22,13 +20,18 @@ public class Constants {
 	public static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
 	
 	// VLC constants
-	public static final FileNameExtensionFilter VLC_FILENAME_FILTER
-		= new FileNameExtensionFilter("VLC Playlist files (.xspf)", "xspf");
 	public static final String VLC_PLAYLIST_EXTENSION = ".xspf";
 	public static final String VLC_FILE_PREFIX = "file:///";
+	/**
+	 * Playlist file size (in bytes) above which playlists are loaded into a columnar track list.
+	 */
+	public static final long HUGE_PLAYLIST_SIZE = 32L << 20;
 	
 	// App constants
 	public static final String PROPERTY_LOCATION = "./defaults.properties";
+	public static final String LIBRARY_INDEX_LOCATION = "./library.index";
+	public static final String METADATA_CACHE_LOCATION = "./metadata.cache";
+	public static final String UNTITLED_JOURNAL_LOCATION = "./untitled.journal";
 	public static final String PROGRAM_TITLE = "VLC Playlist creator";
 
 	// Properties
@@ -37,6 +40,9 @@ public class Constants {
 	public static final String PROPERTY_SAVE_LOCATION = "save.location";
 	public static final String PROPERTY_OPEN_LOCATION = "open.location";
 	public static final String PROPERTY_MUSIC_LOCATION = "music.location";
+	public static final String PROPERTY_SCAN_PARALLELISM = "scan.parallelism";
+	public static final String PROPERTY_EDT_STALL_THRESHOLD = "edt.stall.threshold";
+	public static final String PROPERTY_METADATA_CACHE_SIZE = "metadata.cache.size";
 	
 	// General
 	public static final List<String> AUDIO_SUFFIXES = Arrays.asList(".mp3", ".wav", ".flac", ".avi");
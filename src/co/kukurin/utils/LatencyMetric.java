@@ -0,0 +1,65 @@
+package co.kukurin.utils;
+
+/**
+ * Simple thread-safe latency statistic, keeping track of the last, average and maximum
+ * recorded latency.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class LatencyMetric {
+	
+	private final String name;
+	
+	private long count;
+	private long lastNanos;
+	private long totalNanos;
+	private long maxNanos;
+	
+	/**
+	 * @param name Name used in the metric's string representation.
+	 */
+	public LatencyMetric(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * @param nanos Latency to record, in nanoseconds.
+	 */
+	public synchronized void record(long nanos) {
+		count++;
+		lastNanos = nanos;
+		totalNanos += nanos;
+		maxNanos = Math.max(maxNanos, nanos);
+	}
+	
+	public synchronized long getCount() {
+		return count;
+	}
+	
+	public synchronized double getLastMillis() {
+		return lastNanos / 1e6;
+	}
+	
+	public synchronized double getAverageMillis() {
+		return count == 0 ? 0 : totalNanos / 1e6 / count;
+	}
+	
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1e6;
+	}
+	
+	/**
+	 * Clears all recorded values.
+	 */
+	public synchronized void reset() {
+		count = lastNanos = totalNanos = maxNanos = 0;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%s: n=%d, last=%.1f ms, avg=%.1f ms, max=%.1f ms",
+				name, getCount(), getLastMillis(), getAverageMillis(), getMaxMillis());
+	}
+
+}
@@ -1,5 +1,6 @@
 package co.kukurin.utils;
 
+import java.awt.Component;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -9,7 +10,6 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Properties;
 
-import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
 /**
@@ -69,7 +69,7 @@ public class PropertyManager {
 	 * @param caller
 	 * @return Loaded properties.
 	 */
-	public static Properties load(JFrame caller) {
+	public static Properties load(Component caller) {
 		try {
 			Properties p = load();
 			return p;
@@ -89,7 +89,7 @@ public class PropertyManager {
 	 * 
 	 * @param caller
 	 */
-	public static void store(JFrame caller) {
+	public static void store(Component caller) {
 		try {
 			if(properties != null)
 				properties.store(new FileOutputStream(new File(Constants.PROPERTY_LOCATION)), "");
@@ -130,6 +130,22 @@ public class PropertyManager {
 		return properties.getProperty(key);
 	}
 	
+	/**
+	 * @param key Property key.
+	 * @param defaultValue Value used if the property is missing, or not a positive integer.
+	 * @return Value of given property as a positive integer.
+	 */
+	public static int getPositiveInt(String key, int defaultValue) {
+		String value = get(key);
+		
+		try {
+			if(value != null && Integer.parseInt(value.trim()) > 0)
+				return Integer.parseInt(value.trim());
+		} catch(NumberFormatException ignore) {}
+		
+		return defaultValue;
+	}
+	
 	public static void put(String key, String value) {
 		if(properties != null)
 			properties.put(key, value);
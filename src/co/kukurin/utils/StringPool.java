@@ -0,0 +1,56 @@
+package co.kukurin.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Thread-safe pool of canonical string instances, used to share strings which repeat
+ * across many objects (e.g. the directory of every track within an album).
+ * <p>
+ * Unlike {@link String#intern()}, the pool only references its strings weakly, so a string
+ * is collected once nothing outside the pool uses it, e.g. once the playlist holding its
+ * tracks has been discarded.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class StringPool {
+	
+	/**
+	 * Pooled instance of each string, referenced weakly both as a key and as a value.
+	 */
+	private final Map<String, WeakReference<String>> strings;
+	
+	public StringPool() {
+		this.strings = new WeakHashMap<>();
+	}
+	
+	/**
+	 * @param s String to look up (non-null).
+	 * @return Pooled instance equal to given string; the string itself if it isn't pooled yet.
+	 */
+	public String intern(String s) {
+		synchronized(strings) {
+			WeakReference<String> reference = strings.get(s);
+			String pooled = reference == null ? null : reference.get();
+			
+			if(pooled != null)
+				return pooled;
+			
+			strings.put(s, new WeakReference<>(s));
+			return s;
+		}
+	}
+	
+	/**
+	 * @return Number of pooled strings, including ones which are no longer used but haven't been
+	 * collected yet.
+	 */
+	public int size() {
+		synchronized(strings) {
+			return strings.size();
+		}
+	}
+
+}
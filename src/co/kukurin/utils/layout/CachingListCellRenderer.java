@@ -0,0 +1,124 @@
+package co.kukurin.utils.layout;
+
+import java.awt.Component;
+import java.awt.FontMetrics;
+import java.util.Arrays;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * List cell renderer meant for lists of up to millions of rows.
+ * <p>
+ * The default renderer setup has the list measure every single row (by rendering its string representation)
+ * whenever the model changes, so layout time grows with the list size. Once installed (see
+ * {@link #install(JList)}), cells instead have a fixed height, derived from the list's font, and a fixed
+ * preferred width of {@link #PROTOTYPE_COLUMNS} average characters, while rows stretch to the width of the
+ * list; the list is laid out in constant time, and only visible rows are ever rendered.
+ * <p>
+ * As with the default renderer, a single label is reused for all rows. Display strings of rendered rows are
+ * cached by row index in a small direct-mapped cache, so repainting while scrolling or selecting doesn't
+ * convert elements to strings again; the cache is cleared on each change of the list's model.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@SuppressWarnings("serial")
+public class CachingListCellRenderer extends DefaultListCellRenderer implements ListDataListener {
+	
+	/**
+	 * Number of average characters the preferred cell width is derived from.
+	 */
+	public static final int PROTOTYPE_COLUMNS = 48;
+	
+	/**
+	 * Number of cached display strings; a power of two comfortably larger than the number of rows a list
+	 * displays at once.
+	 */
+	private static final int CACHE_SIZE = 1024;
+	
+	private final String[] texts;
+	private final int[] rows;
+	
+	public CachingListCellRenderer() {
+		this.texts = new String[CACHE_SIZE];
+		this.rows = new int[CACHE_SIZE];
+		Arrays.fill(rows, -1);
+	}
+	
+	/**
+	 * Installs a new renderer on given list, fixing the list's cell size, and keeps it listening to the
+	 * list's model, even if the model is replaced.
+	 * 
+	 * @param list List to render.
+	 * @return Installed renderer.
+	 */
+	public static CachingListCellRenderer install(JList<?> list) {
+		CachingListCellRenderer renderer = new CachingListCellRenderer();
+		list.setCellRenderer(renderer);
+		
+		// measure the renderer as configured for the list, i.e. with its font and border; an empty text has no height
+		renderer.getListCellRendererComponent(list, "Xy", -1, false, false);
+		FontMetrics metrics = renderer.getFontMetrics(list.getFont());
+		list.setFixedCellHeight(renderer.getPreferredSize().height);
+		list.setFixedCellWidth(metrics.charWidth('n') * PROTOTYPE_COLUMNS);
+		
+		list.getModel().addListDataListener(renderer);
+		list.addPropertyChangeListener("model", e -> {
+			((ListModel<?>) e.getOldValue()).removeListDataListener(renderer);
+			((ListModel<?>) e.getNewValue()).addListDataListener(renderer);
+			renderer.clear();
+		});
+		
+		return renderer;
+	}
+	
+	@Override
+	public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+			boolean cellHasFocus) {
+		return super.getListCellRendererComponent(list, text(value, index), index, isSelected, cellHasFocus);
+	}
+	
+	/**
+	 * Clears all cached display strings.
+	 */
+	public void clear() {
+		Arrays.fill(rows, -1);
+		Arrays.fill(texts, null);
+	}
+	
+	@Override
+	public void intervalAdded(ListDataEvent e) {
+		clear();
+	}
+	
+	@Override
+	public void intervalRemoved(ListDataEvent e) {
+		clear();
+	}
+	
+	@Override
+	public void contentsChanged(ListDataEvent e) {
+		clear();
+	}
+	
+	/**
+	 * @return Display string of given value at given row, taken from the cache if possible.
+	 */
+	private String text(Object value, int index) {
+		if(index < 0)
+			return String.valueOf(value);
+		
+		int slot = index & (CACHE_SIZE - 1);
+		if(rows[slot] != index) {
+			texts[slot] = String.valueOf(value);
+			rows[slot] = index;
+		}
+		
+		return texts[slot];
+	}
+
+}
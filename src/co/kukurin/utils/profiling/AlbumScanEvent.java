@@ -0,0 +1,35 @@
+package co.kukurin.utils.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering a single {@link co.kukurin.library.AlbumScanner} scan.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@Name("co.kukurin.AlbumScan")
+@Label("Album Scan")
+@Category({ "Playlist Creator", "Library" })
+@Description("Albums scanned for audio files")
+public class AlbumScanEvent extends jdk.jfr.Event {
+	
+	@Label("Albums")
+	public int albums;
+	
+	@Label("Directories")
+	@Description("Directories listed, including the albums themselves")
+	public long directories;
+	
+	@Label("Files")
+	@Description("Files seen, regardless of their type")
+	public long files;
+	
+	@Label("Tracks")
+	@Description("Audio files found")
+	public long tracks;
+
+}
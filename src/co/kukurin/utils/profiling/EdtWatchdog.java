@@ -0,0 +1,342 @@
+package co.kukurin.utils.profiling;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.kukurin.utils.Constants;
+import co.kukurin.utils.PropertyManager;
+
+/**
+ * Event queue detecting stalls of the event dispatch thread.
+ * <p>
+ * Every dispatched event is timestamped, and a daemon thread checks on the dispatch in progress; once it
+ * has been running for longer than the threshold, the stack of the event dispatch thread is captured. Stalls
+ * are aggregated by their call site, i.e. the topmost frame outside of the JDK, and each site
+ * keeps the number of stalls, their total and maximum duration, and the first captured stack.
+ * <p>
+ * A dispatch which pumps events itself (e.g. while a modal dialog is shown) is not considered stalled
+ * while it waits for or dispatches nested events; its timing starts over once they are done.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class EdtWatchdog extends EventQueue {
+	
+	/**
+	 * Default stall threshold, used if {@link Constants#PROPERTY_EDT_STALL_THRESHOLD} is missing or invalid.
+	 */
+	public static final int DEFAULT_THRESHOLD_MILLIS = 100;
+	
+	private static final long MIN_POLL_MILLIS = 10;
+	
+	/**
+	 * Maximum number of frames kept per captured stack.
+	 */
+	private static final int MAX_FRAMES = 32;
+	
+	private static final String[] PLATFORM_PACKAGES = { "java.", "javax.", "sun.", "jdk.", "com.sun." };
+	
+	private static EdtWatchdog instance;
+	
+	private final long thresholdNanos;
+	
+	/**
+	 * Dispatch currently in progress; null if the event dispatch thread is idle.
+	 */
+	private volatile Dispatch current;
+	private long nextDispatchId;
+	private int dispatchDepth;
+	
+	/**
+	 * Stall captured by the watchdog thread, recorded once its dispatch is done.
+	 */
+	private volatile Capture pending;
+	
+	/**
+	 * Guarded by itself.
+	 */
+	private final Map<String, StallSite> sites;
+	
+	/**
+	 * A single, uninterrupted stretch of dispatching.
+	 */
+	private static class Dispatch {
+		private final long id;
+		private final long start;
+		private final Thread thread;
+		
+		public Dispatch(long id, long start, Thread thread) {
+			this.id = id;
+			this.start = start;
+			this.thread = thread;
+		}
+	}
+	
+	private static class Capture {
+		private final long dispatchId;
+		private final String site;
+		private final StackTraceElement[] stack;
+		
+		public Capture(long dispatchId, String site, StackTraceElement[] stack) {
+			this.dispatchId = dispatchId;
+			this.site = site;
+			this.stack = stack;
+		}
+	}
+	
+	/**
+	 * Stalls aggregated by call site.
+	 */
+	private static class StallSite {
+		private final String site;
+		private final StackTraceElement[] stack;
+		private int count;
+		private long totalNanos;
+		private long maxNanos;
+		
+		public StallSite(String site, StackTraceElement[] stack) {
+			this.site = site;
+			this.stack = stack;
+		}
+	}
+	
+	/**
+	 * @param thresholdMillis Dispatch duration above which a dispatch is considered stalled (positive).
+	 */
+	public EdtWatchdog(long thresholdMillis) {
+		if(thresholdMillis <= 0)
+			throw new IllegalArgumentException("Threshold must be positive!");
+		
+		this.thresholdNanos = thresholdMillis * 1_000_000;
+		this.sites = new HashMap<>();
+		
+		Thread watcher = new Thread(this::watch, "edt-watchdog");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+	
+	/**
+	 * Replaces the system event queue with a watchdog whose threshold is read from
+	 * {@link Constants#PROPERTY_EDT_STALL_THRESHOLD}, defaulting to {@link #DEFAULT_THRESHOLD_MILLIS}.
+	 * Should be called once, before any window is shown.
+	 * 
+	 * @return Installed watchdog.
+	 */
+	public static synchronized EdtWatchdog install() {
+		if(instance == null) {
+			instance = new EdtWatchdog(PropertyManager.getPositiveInt(Constants.PROPERTY_EDT_STALL_THRESHOLD,
+					DEFAULT_THRESHOLD_MILLIS));
+			Toolkit.getDefaultToolkit().getSystemEventQueue().push(instance);
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * @return Installed watchdog; null if {@link #install()} hasn't been called.
+	 */
+	public static synchronized EdtWatchdog getInstance() {
+		return instance;
+	}
+	
+	@Override
+	protected void dispatchEvent(AWTEvent event) {
+		pause();
+		current = new Dispatch(++nextDispatchId, System.nanoTime(), Thread.currentThread());
+		dispatchDepth++;
+		
+		try {
+			super.dispatchEvent(event);
+		} finally {
+			pause();
+			
+			// a nested dispatch interrupts the outer one, which is timed anew from here on
+			if(--dispatchDepth > 0)
+				current = new Dispatch(++nextDispatchId, System.nanoTime(), Thread.currentThread());
+		}
+	}
+	
+	/**
+	 * Waiting for the next event is not a stall, even if done within a dispatch.
+	 */
+	@Override
+	public AWTEvent getNextEvent() throws InterruptedException {
+		Dispatch dispatch = current;
+		if(dispatch == null || dispatch.thread != Thread.currentThread())
+			return super.getNextEvent();
+		
+		pause();
+		try {
+			return super.getNextEvent();
+		} finally {
+			if(current == null)
+				current = new Dispatch(++nextDispatchId, System.nanoTime(), dispatch.thread);
+		}
+	}
+	
+	/**
+	 * @return Threshold in milliseconds.
+	 */
+	public long getThresholdMillis() {
+		return thresholdNanos / 1_000_000;
+	}
+	
+	/**
+	 * @return Number of stalls recorded thus far.
+	 */
+	public int getStallCount() {
+		synchronized(sites) {
+			return sites.values().stream().mapToInt(s -> s.count).sum();
+		}
+	}
+	
+	/**
+	 * Clears all recorded stalls.
+	 */
+	public void reset() {
+		synchronized(sites) {
+			sites.clear();
+		}
+	}
+	
+	/**
+	 * @return Human-readable report of all recorded stalls, with call sites ordered by total stall time.
+	 */
+	public String getReport() {
+		List<StallSite> sorted;
+		synchronized(sites) {
+			sorted = new ArrayList<>(sites.values());
+		}
+		sorted.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+		
+		StringWriter report = new StringWriter();
+		PrintWriter out = new PrintWriter(report);
+		
+		int count = sorted.stream().mapToInt(s -> s.count).sum();
+		out.printf("Event dispatch stalls over %d ms: %d, at %d call sites%n", getThresholdMillis(), count,
+				sorted.size());
+		
+		for(StallSite site : sorted) {
+			out.println();
+			out.println(site.site);
+			out.printf("    stalls: %d, total: %.0f ms, max: %.0f ms%n", site.count, site.totalNanos / 1e6,
+					site.maxNanos / 1e6);
+			
+			for(StackTraceElement frame : site.stack)
+				out.println("\tat " + frame);
+		}
+		
+		out.flush();
+		return report.toString();
+	}
+	
+	/**
+	 * Writes {@link #getReport()} to given file.
+	 * 
+	 * @param file Target file.
+	 * @throws IOException I/O error.
+	 */
+	public void dump(File file) throws IOException {
+		Files.write(file.toPath(), getReport().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Ends the current stretch of dispatching, recording it in case it has been captured as a stall.
+	 */
+	private void pause() {
+		Dispatch dispatch = current;
+		if(dispatch == null)
+			return;
+		
+		current = null;
+		
+		Capture capture = pending;
+		if(capture == null || capture.dispatchId != dispatch.id)
+			return;
+		
+		pending = null;
+		long duration = System.nanoTime() - dispatch.start;
+		
+		synchronized(sites) {
+			StallSite site = sites.computeIfAbsent(capture.site, k -> new StallSite(k, capture.stack));
+			site.count++;
+			site.totalNanos += duration;
+			site.maxNanos = Math.max(site.maxNanos, duration);
+		}
+	}
+	
+	private void watch() {
+		long pollMillis = Math.max(MIN_POLL_MILLIS, getThresholdMillis() / 4);
+		long capturedId = -1;
+		
+		while(true) {
+			try {
+				Thread.sleep(pollMillis);
+			} catch(InterruptedException e) {
+				return;
+			}
+			
+			Dispatch dispatch = current;
+			if(dispatch == null || dispatch.id == capturedId || System.nanoTime() - dispatch.start < thresholdNanos)
+				continue;
+			
+			StackTraceElement[] stack = dispatch.thread.getStackTrace();
+			
+			// the dispatch may have finished while the stack was being captured
+			if(current != dispatch)
+				continue;
+			
+			capturedId = dispatch.id;
+			pending = new Capture(dispatch.id, callSite(stack), trim(stack));
+		}
+	}
+	
+	/**
+	 * @return Topmost frame outside of the JDK, i.e. belonging to this application; the topmost frame if
+	 * there is none.
+	 */
+	private static String callSite(StackTraceElement[] stack) {
+		for(StackTraceElement frame : stack) {
+			if(!isPlatformClass(frame.getClassName()))
+				return frame.getClassName() + "." + frame.getMethodName()
+						+ "(" + frame.getFileName() + ":" + frame.getLineNumber() + ")";
+		}
+		
+		return stack.length == 0 ? "(unknown)" : stack[0].toString();
+	}
+	
+	private static boolean isPlatformClass(String className) {
+		for(String prefix : PLATFORM_PACKAGES) {
+			if(className.startsWith(prefix))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return Frames above the event queue's own, capped at {@link #MAX_FRAMES}.
+	 */
+	private static StackTraceElement[] trim(StackTraceElement[] stack) {
+		int length = 0;
+		while(length < stack.length && length < MAX_FRAMES
+				&& !stack[length].getClassName().equals(EdtWatchdog.class.getName()))
+			length++;
+		
+		StackTraceElement[] trimmed = new StackTraceElement[length];
+		System.arraycopy(stack, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+}
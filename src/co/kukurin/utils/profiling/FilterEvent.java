@@ -0,0 +1,35 @@
+package co.kukurin.utils.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering a single computation of a
+ * {@link co.kukurin.gui.model.concrete.FileListModel}'s active set.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@Name("co.kukurin.Filter")
+@Label("Album Filter")
+@Category({ "Playlist Creator", "Album List" })
+@Description("Album list filtered by a query")
+public class FilterEvent extends jdk.jfr.Event {
+	
+	@Label("Query")
+	public String query;
+	
+	@Label("Input Size")
+	@Description("Number of albums in the entire list")
+	public int inputSize;
+	
+	@Label("Result Size")
+	@Description("Number of matching albums; 0 if cancelled")
+	public int resultSize;
+	
+	@Label("Cancelled")
+	public boolean cancelled;
+
+}
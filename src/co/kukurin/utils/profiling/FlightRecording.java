@@ -0,0 +1,31 @@
+package co.kukurin.utils.profiling;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Static class telling whether flight recorder events are worth creating.
+ * <p>
+ * Creating the first instance of an event class registers it with the flight recorder, which costs a few
+ * hundred milliseconds even if nothing is being recorded, and events created on hot paths such as list model
+ * mutations would cost an allocation each. Events are therefore only created once the flight recorder has been
+ * started, either on the command line or by attaching to a running process; this also keeps short-lived
+ * processes (see {@link co.kukurin.main.BatchMode}) from paying for the registration.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class FlightRecording {
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private FlightRecording() {}
+	
+	/**
+	 * @return Whether the flight recorder has been started.
+	 */
+	public static boolean isActive() {
+		return FlightRecorder.isInitialized();
+	}
+
+}
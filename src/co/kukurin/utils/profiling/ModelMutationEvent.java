@@ -0,0 +1,45 @@
+package co.kukurin.utils.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering a single bulk change of a {@link co.kukurin.gui.model.UpdateableListModel}.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@Name("co.kukurin.ModelMutation")
+@Label("Model Mutation")
+@Category({ "Playlist Creator", "Model" })
+@Description("Elements added to or removed from a list model")
+public class ModelMutationEvent extends jdk.jfr.Event {
+	
+	public static final String ADD = "add";
+	public static final String REMOVE = "remove";
+	public static final String UPDATE = "update";
+	
+	@Label("Model")
+	public Class<?> model;
+	
+	@Label("Operation")
+	@Description("One of add, remove or update (both at once)")
+	public String operation;
+	
+	@Label("Added")
+	public int added;
+	
+	@Label("Removed")
+	public int removed;
+	
+	@Label("Ranges")
+	@Description("Number of removed index ranges")
+	public int ranges;
+	
+	@Label("Size")
+	@Description("Size of the model after the change")
+	public int size;
+
+}
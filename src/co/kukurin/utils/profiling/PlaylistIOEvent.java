@@ -0,0 +1,39 @@
+package co.kukurin.utils.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering a single playlist being written or read by
+ * {@link co.kukurin.xml.XMLPlaylistUtils}.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+@Name("co.kukurin.PlaylistIO")
+@Label("Playlist I/O")
+@Category({ "Playlist Creator", "Playlist" })
+@Description("Playlist saved to or loaded from disk")
+public class PlaylistIOEvent extends jdk.jfr.Event {
+	
+	public static final String SAVE = "save";
+	public static final String LOAD = "load";
+	
+	@Label("Operation")
+	@Description("Either save or load")
+	public String operation;
+	
+	@Label("Path")
+	public String path;
+	
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+	
+	@Label("Tracks")
+	public long tracks;
+
+}
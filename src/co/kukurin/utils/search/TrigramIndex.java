@@ -0,0 +1,314 @@
+package co.kukurin.utils.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Trigram inverted index over the lowercase {@link Object#toString()} representations of its elements.
+ * <p>
+ * Each element is assigned an increasing id, and every distinct three-character sequence of its string
+ * representation maps to a sorted list of ids of elements containing it. A substring query of three or
+ * more characters can then be answered by intersecting the posting lists of its trigrams, followed by
+ * a verification pass over the (usually small) set of candidates. Shorter queries fall back to scanning
+ * the cached lowercase strings.
+ * <p>
+ * Removed elements are only marked as such, and the index is compacted once more than half of its
+ * entries have been removed. Query results are always returned in insertion order.
+ * 
+ * @author Toni Kukurin
+ *
+ * @param <E> Element type.
+ */
+public class TrigramIndex<E> {
+	
+	private static final int GRAM_LENGTH = 3;
+	private static final int CANCELLATION_CHECK_INTERVAL = 4096;
+	private static final BooleanSupplier NEVER_CANCELLED = () -> false;
+	
+	/**
+	 * Elements by their id; removed elements are null.
+	 */
+	private List<E> elements;
+	
+	/**
+	 * Lowercase string representations by element id; removed elements are null.
+	 */
+	private List<String> keys;
+	
+	/**
+	 * Ids currently assigned to each element, in increasing order.
+	 */
+	private Map<E, Deque<Integer>> ids;
+	
+	private Map<Long, Postings> postings;
+	private int removedCount;
+	
+	/**
+	 * Sorted, growable list of element ids.
+	 */
+	private static class Postings {
+		private int[] ids = new int[4];
+		private int size;
+		
+		private void add(int id) {
+			if(size > 0 && ids[size - 1] == id)
+				return;
+			
+			if(size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+	}
+	
+	public TrigramIndex() {
+		clear();
+	}
+	
+	/**
+	 * Removes all elements from the index.
+	 */
+	public void clear() {
+		this.elements = new ArrayList<>();
+		this.keys = new ArrayList<>();
+		this.ids = new HashMap<>();
+		this.postings = new HashMap<>();
+		this.removedCount = 0;
+	}
+	
+	/**
+	 * @param element Element to be indexed.
+	 */
+	public void add(E element) {
+		int id = elements.size();
+		String key = element.toString().toLowerCase();
+		
+		elements.add(element);
+		keys.add(key);
+		ids.computeIfAbsent(element, k -> new ArrayDeque<>(1)).addLast(id);
+		
+		for(int i = 0; i + GRAM_LENGTH <= key.length(); i++)
+			postings.computeIfAbsent(trigram(key, i), k -> new Postings()).add(id);
+	}
+	
+	/**
+	 * @param elements Elements to be indexed.
+	 */
+	public void addAll(Collection<? extends E> elements) {
+		elements.forEach(this::add);
+	}
+	
+	/**
+	 * Removes the earliest added occurrence of given element.
+	 * 
+	 * @param element Element to be removed.
+	 * @return True if the element was indexed.
+	 */
+	public boolean remove(E element) {
+		Deque<Integer> elementIds = ids.get(element);
+		if(elementIds == null)
+			return false;
+		
+		int id = elementIds.removeFirst();
+		if(elementIds.isEmpty())
+			ids.remove(element);
+		
+		elements.set(id, null);
+		keys.set(id, null);
+		
+		if(++removedCount > elements.size() / 2)
+			compact();
+		
+		return true;
+	}
+	
+	/**
+	 * @return Number of indexed elements.
+	 */
+	public int size() {
+		return elements.size() - removedCount;
+	}
+	
+	/**
+	 * Finds all elements whose lowercase string representation contains each of the given tokens.
+	 * 
+	 * @param tokens Lowercase tokens.
+	 * @return Matching elements, in insertion order.
+	 */
+	public List<E> query(String[] tokens) {
+		return getElements(queryIds(tokens));
+	}
+	
+	/**
+	 * Same as {@link #query(String[])}, returning element ids instead of elements.
+	 * <p>
+	 * Ids remain valid until the next removal.
+	 * 
+	 * @param tokens Lowercase tokens.
+	 * @return Ids of matching elements, in increasing order.
+	 */
+	public int[] queryIds(String[] tokens) {
+		return queryIds(tokens, NEVER_CANCELLED);
+	}
+	
+	/**
+	 * Same as {@link #queryIds(String[])}, periodically checking whether the query has been cancelled.
+	 * 
+	 * @param tokens Lowercase tokens.
+	 * @param cancelled Returns true once the query is no longer needed.
+	 * @return Ids of matching elements, in increasing order.
+	 * @throws CancellationException In case the query has been cancelled.
+	 */
+	public int[] queryIds(String[] tokens, BooleanSupplier cancelled) {
+		List<Postings> lists = new ArrayList<>();
+		
+		for(String token : tokens) {
+			for(int i = 0; i + GRAM_LENGTH <= token.length(); i++) {
+				Postings p = postings.get(trigram(token, i));
+				if(p == null)
+					return new int[0];
+				
+				lists.add(p);
+			}
+		}
+		
+		if(lists.isEmpty()) {
+			int[] all = new int[elements.size()];
+			for(int id = 0; id < all.length; id++)
+				all[id] = id;
+			return filterIds(all, tokens, cancelled);
+		}
+		
+		// intersecting the shortest lists first keeps the candidate set small from the start
+		lists.sort((p1, p2) -> Integer.compare(p1.size, p2.size));
+		
+		int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+		int candidateCount = candidates.length;
+		
+		for(int i = 1; i < lists.size() && candidateCount > 0; i++) {
+			checkCancelled(cancelled);
+			
+			Postings p = lists.get(i);
+			candidateCount = intersect(candidates, candidateCount, p.ids, p.size);
+		}
+		
+		return filterIds(Arrays.copyOf(candidates, candidateCount), tokens, cancelled);
+	}
+	
+	/**
+	 * Verification pass; keeps only those of the given ids whose elements contain all tokens.
+	 * <p>
+	 * Since this only checks the given candidates, it can be used to narrow down a previous
+	 * result when the new tokens are known to be more restrictive.
+	 * 
+	 * @param ids Candidate ids, in increasing order.
+	 * @param tokens Lowercase tokens.
+	 * @return Ids of matching elements, in increasing order.
+	 */
+	public int[] filterIds(int[] ids, String[] tokens) {
+		return filterIds(ids, tokens, NEVER_CANCELLED);
+	}
+	
+	/**
+	 * Same as {@link #filterIds(int[], String[])}, periodically checking whether the query has been
+	 * cancelled.
+	 * 
+	 * @param ids Candidate ids, in increasing order.
+	 * @param tokens Lowercase tokens.
+	 * @param cancelled Returns true once the query is no longer needed.
+	 * @return Ids of matching elements, in increasing order.
+	 * @throws CancellationException In case the query has been cancelled.
+	 */
+	public int[] filterIds(int[] ids, String[] tokens, BooleanSupplier cancelled) {
+		int[] result = new int[ids.length];
+		int size = 0;
+		
+		for(int i = 0; i < ids.length; i++) {
+			if(i % CANCELLATION_CHECK_INTERVAL == 0)
+				checkCancelled(cancelled);
+			
+			if(matches(ids[i], tokens))
+				result[size++] = ids[i];
+		}
+		
+		return Arrays.copyOf(result, size);
+	}
+	
+	/**
+	 * @param ids Element ids.
+	 * @return Elements corresponding to given ids.
+	 */
+	public List<E> getElements(int[] ids) {
+		List<E> result = new ArrayList<>(ids.length);
+		for(int id : ids)
+			result.add(elements.get(id));
+		return result;
+	}
+	
+	private boolean matches(int id, String[] tokens) {
+		String key = keys.get(id);
+		if(key == null)
+			return false;
+		
+		for(String token : tokens) {
+			if(!key.contains(token))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Intersects two sorted id arrays, storing the result at the start of the first one.
+	 * 
+	 * @return Size of the intersection.
+	 */
+	private static int intersect(int[] a, int aSize, int[] b, int bSize) {
+		int i = 0, j = 0, size = 0;
+		
+		while(i < aSize && j < bSize) {
+			if(a[i] < b[j]) {
+				i++;
+			} else if(a[i] > b[j]) {
+				j++;
+			} else {
+				a[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Rebuilds the index from its remaining elements, reassigning ids.
+	 */
+	private void compact() {
+		List<E> remaining = new ArrayList<>(size());
+		for(E element : elements) {
+			if(element != null)
+				remaining.add(element);
+		}
+		
+		clear();
+		addAll(remaining);
+	}
+	
+	private static void checkCancelled(BooleanSupplier cancelled) {
+		if(cancelled.getAsBoolean())
+			throw new CancellationException();
+	}
+	
+	private static long trigram(String s, int start) {
+		return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+	}
+
+}
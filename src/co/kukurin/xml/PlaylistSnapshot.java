@@ -0,0 +1,288 @@
+package co.kukurin.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+import co.kukurin.metadata.TrackMetadata;
+import co.kukurin.utils.Constants;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Binary snapshot of a playlist, stored next to its XSPF file and read instead of it when reopening the
+ * playlist.
+ * <p>
+ * The snapshot holds the playlist's tracks along with its album runs (consecutive tracks belonging to the
+ * same album, as kept by the playlist model), so albums added from disc subdirectories are restored as
+ * they were added rather than split by directory. All repeating strings (directories, album locations,
+ * artists and album titles) are pooled in a single table, and each track refers to them by index.
+ * <p>
+ * The header holds the length and the CRC32 checksum of the XSPF file the snapshot was written along with;
+ * a snapshot is only used if it is not older than the XSPF file and both still match, which catches the
+ * playlist being edited or replaced by another program. Neither file is memory-mapped, since a mapped file
+ * can't be replaced on some platforms (e.g. Windows) until the mapping is garbage collected, and both are
+ * replaced on each save.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class PlaylistSnapshot {
+	
+	/**
+	 * Suffix of the snapshot, appended to the playlist location.
+	 */
+	public static final String SUFFIX = ".snap";
+	
+	private static final int MAGIC = 0x504C534E;
+	private static final int VERSION = 1;
+	
+	private static final int NONE = -1;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Non-instantiable.
+	 */
+	private PlaylistSnapshot() {}
+	
+	/**
+	 * Consecutive tracks belonging to the same album.
+	 */
+	public static class AlbumRun {
+		
+		private final File album;
+		private final int length;
+		
+		/**
+		 * @param album Album location; null if the tracks are not local files.
+		 * @param length Number of tracks.
+		 */
+		public AlbumRun(File album, int length) {
+			this.album = album;
+			this.length = length;
+		}
+		
+		public File getAlbum() {
+			return album;
+		}
+		
+		public int getLength() {
+			return length;
+		}
+		
+	}
+	
+	/**
+	 * @param playlist Playlist location.
+	 * @return Location of the snapshot of given playlist.
+	 */
+	public static Path locationOf(File playlist) {
+		return new File(playlist.getPath() + SUFFIX).toPath();
+	}
+	
+	/**
+	 * Writes the snapshot of a playlist which has just been written to given location. The snapshot is
+	 * first written to a temporary file, so an interrupted write never leaves a corrupt snapshot behind.
+	 * 
+	 * @param playlist Location of the written XSPF file.
+	 * @param tracks Tracks of the playlist.
+	 * @param runs Album runs covering all tracks, in order.
+	 * @throws IOException I/O error.
+	 */
+	public static void write(File playlist, List<Track> tracks, List<AlbumRun> runs) throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		
+		for(AlbumRun run : runs)
+			pool(strings, run.album == null ? null : run.album.getPath());
+		
+		for(Track track : tracks) {
+			pool(strings, track.getDirectory());
+			
+			if(track.getMetadata() != null) {
+				pool(strings, track.getMetadata().getArtist());
+				pool(strings, track.getMetadata().getAlbum());
+			}
+		}
+		
+		Path location = locationOf(playlist);
+		Path temp = location.resolveSibling(location.getFileName() + ".tmp");
+		
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(playlist.length());
+			out.writeInt(checksum(playlist));
+			
+			out.writeInt(strings.size());
+			for(String s : strings.keySet())
+				writeString(out, s);
+			
+			out.writeInt(runs.size());
+			for(AlbumRun run : runs) {
+				out.writeInt(run.album == null ? NONE : strings.get(run.album.getPath()));
+				out.writeInt(run.length);
+			}
+			
+			out.writeInt(tracks.size());
+			for(Track track : tracks) {
+				out.writeInt(track.getDirectory() == null ? NONE : strings.get(track.getDirectory()));
+				writeString(out, track.getName());
+				writeNullableString(out, track.getTitle());
+				
+				TrackMetadata metadata = track.getMetadata();
+				out.writeBoolean(metadata != null);
+				if(metadata != null) {
+					out.writeInt(metadata.getArtist() == null ? NONE : strings.get(metadata.getArtist()));
+					out.writeInt(metadata.getAlbum() == null ? NONE : strings.get(metadata.getAlbum()));
+					writeNullableString(out, metadata.getTitle());
+					out.writeInt(metadata.getTrackNumber());
+					out.writeLong(metadata.getDurationMillis());
+				}
+			}
+		} catch(IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		
+		Files.move(temp, location, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Reads the snapshot of given playlist, if it exists and matches the playlist.
+	 * 
+	 * @param playlist Playlist location.
+	 * @param tracks List the tracks are appended to; may contain some of them in case reading fails.
+	 * @param progress Receives the number of snapshot bytes read thus far, once per track read; reading
+	 * may be aborted by throwing an unchecked exception.
+	 * @return Album runs covering all read tracks, in order; null if there is no valid snapshot, in which
+	 * case no tracks have been added.
+	 * @throws IOException I/O error, or invalid snapshot format.
+	 */
+	public static List<AlbumRun> read(File playlist, List<Track> tracks, LongConsumer progress) throws IOException {
+		Path location = locationOf(playlist);
+		if(!Files.exists(location) || location.toFile().lastModified() < playlist.lastModified())
+			return null;
+		
+		try(FileChannel channel = FileChannel.open(location, StandardOpenOption.READ);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+						BUFFER_SIZE))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != playlist.length()
+					|| in.readInt() != checksum(playlist))
+				return null;
+			
+			long size = channel.size();
+			
+			int stringCount = in.readInt();
+			List<String> strings = new ArrayList<>();
+			for(int i = 0; i < stringCount; i++)
+				strings.add(readString(in, size));
+			
+			int runCount = in.readInt();
+			List<AlbumRun> runs = new ArrayList<>();
+			for(int i = 0; i < runCount; i++) {
+				String album = string(strings, in.readInt());
+				runs.add(new AlbumRun(album == null ? null : new File(album), in.readInt()));
+			}
+			
+			int trackCount = in.readInt();
+			for(int i = 0; i < trackCount; i++) {
+				String directory = string(strings, in.readInt());
+				String name = readString(in, size);
+				String title = readNullableString(in, size);
+				
+				TrackMetadata metadata = null;
+				if(in.readBoolean())
+					metadata = new TrackMetadata(string(strings, in.readInt()), string(strings, in.readInt()),
+							readNullableString(in, size), in.readInt(), in.readLong());
+				
+				String trackLocation = directory == null ? name : Constants.VLC_FILE_PREFIX + directory + '/' + name;
+				tracks.add(new Track(trackLocation, title, metadata));
+				progress.accept(channel.position());
+			}
+			
+			return runs;
+		} catch(IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Invalid playlist snapshot format!", e);
+		}
+	}
+	
+	/**
+	 * @return CRC32 checksum of given file's contents, read through a buffer rather than mapped.
+	 */
+	private static int checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while(channel.read(buffer) >= 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		
+		return (int) crc.getValue();
+	}
+	
+	private static void pool(Map<String, Integer> strings, String s) {
+		if(s != null && !strings.containsKey(s))
+			strings.put(s, strings.size());
+	}
+	
+	private static String string(List<String> strings, int index) {
+		return index == NONE ? null : strings.get(index);
+	}
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+		if(s == null)
+			out.writeInt(NONE);
+		else
+			writeString(out, s);
+	}
+	
+	private static String readString(DataInputStream in, long size) throws IOException {
+		String s = readNullableString(in, size);
+		if(s == null)
+			throw new IllegalArgumentException("Missing string!");
+		return s;
+	}
+	
+	/**
+	 * @param size Size of the entire snapshot, which no string can be longer than.
+	 */
+	private static String readNullableString(DataInputStream in, long size) throws IOException {
+		int length = in.readInt();
+		if(length == NONE)
+			return null;
+		if(length < 0 || length > size)
+			throw new IOException("Invalid string length " + length + " in playlist snapshot!");
+		
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -1,20 +1,32 @@
 package co.kukurin.xml;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
-import org.simpleframework.xml.Serializer;
-import org.simpleframework.xml.core.Persister;
-
+import co.kukurin.metadata.TrackMetadata;
 import co.kukurin.utils.Constants;
+import co.kukurin.utils.profiling.FlightRecording;
+import co.kukurin.utils.profiling.PlaylistIOEvent;
 import co.kukurin.xml.items.Playlist;
+import co.kukurin.xml.items.Track;
 
 /**
  * Utility methods for writing to XML files.
+ * <p>
+ * Each playlist written or read is reported to the flight recorder as a {@link PlaylistIOEvent}, once the
+ * flight recorder has been started.
  * 
  * @author Toni Kukurin
  *
@@ -26,34 +38,58 @@ public class XMLPlaylistUtils {
 	 */
 	private XMLPlaylistUtils() {}
 	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
 	/**
 	 * Creates a playlist using given parameters.
+	 * <p>
+	 * The playlist is streamed to a temporary file in the target directory using {@link XspfWriter},
+	 * which then replaces the resulting file; an interrupted write therefore never leaves a partially
+	 * written playlist behind.
 	 * 
 	 * @param toCreate Playlist to be created (non-null).
 	 * @param result Resulting file (non-null).
+	 * @return Written file, i.e. the resulting file with the {@link Constants#VLC_PLAYLIST_EXTENSION} appended
+	 * if it was missing.
 	 * @throws Exception I/O error.
 	 */
-	public static void createPlaylist(Playlist toCreate, File result) throws Exception {
+	public static File createPlaylist(Playlist toCreate, File result) throws Exception {
 		Objects.requireNonNull(toCreate);
 		Objects.requireNonNull(result);
 		
-		Serializer s = new Persister();
+		PlaylistIOEvent event = FlightRecording.isActive() ? new PlaylistIOEvent() : null;
+		if(event != null)
+			event.begin();
+		
 		String filename = result.getName();
 		
 		if(!filename.endsWith(Constants.VLC_PLAYLIST_EXTENSION))
 			filename += Constants.VLC_PLAYLIST_EXTENSION;
 		
-		File temp = new File(filename + "-tempFile.temp");
+		Path pResult = result.toPath().resolveSibling(filename);
+		Path temp = pResult.resolveSibling(filename + ".tmp");
+		
+		try(XspfWriter writer = new XspfWriter(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE),
+				toCreate.getTitle())) {
+			for(Track track : toCreate.getTracklist())
+				writer.write(track);
+		} catch(Exception e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
 		
-		temp.createNewFile();
-		s.write(toCreate, temp);
-		byte[] tempBytes = Files.readAllBytes(temp.toPath());
-		temp.delete();
+		long bytes = Files.size(temp);
+		Files.move(temp, pResult, StandardCopyOption.REPLACE_EXISTING);
 		
-		// I don't know of an easier way to prepend the header currently
-		Path pResult = Paths.get(result.getParent().toString() + "/" + filename);
-		Files.write(pResult, Constants.XML_HEADER.getBytes());
-		Files.write(pResult, tempBytes, StandardOpenOption.APPEND);
+		if(event != null) {
+			event.operation = PlaylistIOEvent.SAVE;
+			event.path = pResult.toString();
+			event.tracks = toCreate.getTracklist().size();
+			event.bytes = bytes;
+			event.commit();
+		}
+		
+		return pResult.toFile();
 	}
 	
 	/**
@@ -64,12 +100,170 @@ public class XMLPlaylistUtils {
 	 * @throws Exception I/O error.
 	 */
 	public static Playlist loadPlaylist(File location) throws Exception {
+		List<Track> tracks = new ArrayList<>();
+		String title = loadPlaylist(location, Integer.MAX_VALUE, tracks::addAll);
+		
+		return new Playlist(title == null ? location.getName() : title, tracks);
+	}
+	
+	/**
+	 * Streams tracks from given location, passing them to the consumer in chunks of given size as
+	 * they are parsed.
+	 * 
+	 * @param location Location which the file is to be loaded from
+	 * @param chunkSize Maximum number of tracks passed to the consumer at once.
+	 * @param chunkConsumer Consumer receiving parsed tracks, in playlist order.
+	 * @return Playlist title; null if not present.
+	 * @throws Exception I/O error.
+	 */
+	public static String loadPlaylist(File location, int chunkSize, Consumer<List<Track>> chunkConsumer)
+			throws Exception {
+		return loadPlaylist(location, chunkSize, chunkConsumer, bytes -> {});
+	}
+	
+	/**
+	 * Streams tracks from given location as in {@link #loadPlaylist(File, int, Consumer)}, additionally
+	 * reporting the number of bytes read as the file is being parsed.
+	 * 
+	 * @param location Location which the file is to be loaded from
+	 * @param chunkSize Maximum number of tracks passed to the consumer at once.
+	 * @param chunkConsumer Consumer receiving parsed tracks, in playlist order.
+	 * @param progress Receives the total number of bytes read thus far, once per buffer read; reading
+	 * may be aborted by throwing an unchecked exception.
+	 * @return Playlist title; null if not present.
+	 * @throws Exception I/O error.
+	 */
+	public static String loadPlaylist(File location, int chunkSize, Consumer<List<Track>> chunkConsumer,
+			LongConsumer progress) throws Exception {
+		ChunkingHandler handler = new ChunkingHandler(chunkSize, chunkConsumer);
+		String title = loadPlaylist(location, handler, progress);
+		handler.flush();
+		
+		return title;
+	}
+	
+	/**
+	 * Streams tracks from given location to given handler as they are parsed, without creating any
+	 * intermediate objects; used for bulk imports, e.g. into a {@link co.kukurin.xml.items.ColumnarTrackList}.
+	 * 
+	 * @param location Location which the file is to be loaded from
+	 * @param handler Handler receiving parsed tracks, in playlist order.
+	 * @return Playlist title; null if not present.
+	 * @throws Exception I/O error.
+	 */
+	public static String loadPlaylist(File location, XspfReader.TrackHandler handler) throws Exception {
+		return loadPlaylist(location, handler, bytes -> {});
+	}
+	
+	/**
+	 * Streams tracks from given location as in {@link #loadPlaylist(File, XspfReader.TrackHandler)},
+	 * additionally reporting the number of bytes read as the file is being parsed.
+	 * 
+	 * @param location Location which the file is to be loaded from
+	 * @param handler Handler receiving parsed tracks, in playlist order.
+	 * @param progress Receives the total number of bytes read thus far, once per buffer read; reading
+	 * may be aborted by throwing an unchecked exception.
+	 * @return Playlist title; null if not present.
+	 * @throws Exception I/O error.
+	 */
+	public static String loadPlaylist(File location, XspfReader.TrackHandler handler, LongConsumer progress)
+			throws Exception {
 		if(location == null || location.isDirectory() || !location.exists())
 			throw new IllegalArgumentException("Invalid playlist location given!");
 		
-		Serializer s = new Persister();
-		Playlist p = s.read(Playlist.class, location);
+		PlaylistIOEvent event = FlightRecording.isActive() ? new PlaylistIOEvent() : null;
+		if(event != null)
+			event.begin();
+		
+		try(XspfReader reader = new XspfReader(new BufferedInputStream(
+				new CountingInputStream(Files.newInputStream(location.toPath()), progress), BUFFER_SIZE))) {
+			reader.read((trackLocation, title, metadata) -> {
+				handler.track(trackLocation, title, metadata);
+				if(event != null)
+					event.tracks++;
+			});
+			
+			if(event != null) {
+				event.operation = PlaylistIOEvent.LOAD;
+				event.path = location.getPath();
+				event.bytes = location.length();
+				event.commit();
+			}
+			
+			return reader.getTitle();
+		}
+	}
+	
+	/**
+	 * Stream reporting the total number of bytes read after each read.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		
+		private final LongConsumer progress;
+		private long count;
+		
+		public CountingInputStream(InputStream in, LongConsumer progress) {
+			super(in);
+			this.progress = progress;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0)
+				progress.accept(++count);
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n > 0)
+				progress.accept(count += n);
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			progress.accept(count += skipped);
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+	
+	/**
+	 * Collects parsed tracks, passing them on once a chunk has been filled.
+	 */
+	private static class ChunkingHandler implements XspfReader.TrackHandler {
+		
+		private final int chunkSize;
+		private final Consumer<List<Track>> chunkConsumer;
+		private List<Track> chunk;
+		
+		public ChunkingHandler(int chunkSize, Consumer<List<Track>> chunkConsumer) {
+			this.chunkSize = chunkSize;
+			this.chunkConsumer = chunkConsumer;
+			this.chunk = new ArrayList<>();
+		}
+		
+		@Override
+		public void track(String location, String title, TrackMetadata metadata) {
+			chunk.add(new Track(location, title, metadata));
+			
+			if(chunk.size() >= chunkSize)
+				flush();
+		}
 		
-		return p;
+		public void flush() {
+			if(!chunk.isEmpty()) {
+				chunkConsumer.accept(chunk);
+				chunk = new ArrayList<>();
+			}
+		}
 	}
 }
@@ -0,0 +1,165 @@
+package co.kukurin.xml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import co.kukurin.metadata.TrackMetadata;
+
+/**
+ * Streaming XSPF playlist reader.
+ * <p>
+ * The document is pulled one element at a time, and each track is reported to a {@link TrackHandler}
+ * as soon as its element has been parsed; nothing besides the current track is kept in memory.
+ * Elements other than the playlist title and the track locations, titles and tags (creator, album, track
+ * number and duration) are skipped.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class XspfReader implements Closeable {
+	
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	
+	static {
+		// playlists never need external entities, and resolving them would be a security risk
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	/**
+	 * Receives parsed tracks.
+	 */
+	@FunctionalInterface
+	public static interface TrackHandler {
+		/**
+		 * @param location Track location, as written in the playlist.
+		 * @param title Track title; null if not present.
+		 * @param metadata Track tags; null if none are present.
+		 */
+		public void track(String location, String title, TrackMetadata metadata);
+	}
+	
+	private final InputStream in;
+	private final XMLStreamReader xml;
+	
+	private String title;
+	
+	/**
+	 * @param in Input stream; should be buffered.
+	 * @throws IOException In case the stream can't be parsed.
+	 */
+	public XspfReader(InputStream in) throws IOException {
+		this.in = Objects.requireNonNull(in);
+		
+		try {
+			this.xml = FACTORY.createXMLStreamReader(in);
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Reads the entire document, passing each track to given handler in document order.
+	 * 
+	 * @param handler Track handler.
+	 * @return Number of tracks read.
+	 * @throws IOException I/O or parse error.
+	 */
+	public int read(TrackHandler handler) throws IOException {
+		int count = 0;
+		
+		try {
+			while(xml.hasNext()) {
+				if(xml.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+				
+				switch(xml.getLocalName()) {
+				case "track":
+					readTrack(handler);
+					count++;
+					break;
+				case "title":
+					if(title == null)
+						title = xml.getElementText();
+					break;
+				default:
+					break;
+				}
+			}
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * @return Playlist title; null if not present or not yet read.
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			xml.close();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private void readTrack(TrackHandler handler) throws XMLStreamException {
+		String location = null;
+		String trackTitle = null;
+		String creator = null;
+		String album = null;
+		String trackNum = null;
+		String duration = null;
+		int depth = 1;
+		
+		while(depth > 0) {
+			int event = xml.next();
+			
+			if(event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if(event == XMLStreamConstants.START_ELEMENT) {
+				switch(depth == 1 ? xml.getLocalName() : "") {
+				case "location": location = xml.getElementText(); break;
+				case "title": trackTitle = xml.getElementText(); break;
+				case "creator": creator = xml.getElementText(); break;
+				case "album": album = xml.getElementText(); break;
+				case "trackNum": trackNum = xml.getElementText(); break;
+				case "duration": duration = xml.getElementText(); break;
+				default: depth++;
+				}
+			}
+		}
+		
+		TrackMetadata metadata = null;
+		if(creator != null || album != null || trackNum != null || duration != null)
+			metadata = new TrackMetadata(creator, album, null, TrackMetadata.parseTrackNumber(trackNum),
+					parseDuration(duration));
+		
+		if(location != null)
+			handler.track(location, trackTitle, metadata);
+	}
+	
+	private static long parseDuration(String duration) {
+		try {
+			return duration == null ? 0 : Long.parseLong(duration.trim());
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+
+}
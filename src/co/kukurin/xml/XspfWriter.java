@@ -0,0 +1,135 @@
+package co.kukurin.xml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import co.kukurin.metadata.TrackMetadata;
+import co.kukurin.utils.Constants;
+import co.kukurin.xml.items.Track;
+
+/**
+ * Streaming XSPF playlist writer.
+ * <p>
+ * The header is written upon construction, each {@link #write(Track)} call then writes a single track
+ * directly to the underlying stream, and {@link #close()} finishes the document. Memory usage therefore
+ * doesn't depend on the playlist size.
+ * <p>
+ * Track tags are written in the XSPF elements <code>creator</code>, <code>album</code>, <code>trackNum</code>
+ * and <code>duration</code> (in milliseconds).
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class XspfWriter implements Closeable {
+	
+	static final String XSPF_NAMESPACE = "http://xspf.org/ns/0/";
+	static final String VLC_NAMESPACE = "http://www.videolan.org/vlc/playlist/ns/0/";
+	
+	private static final String INDENT = "   ";
+	private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+	
+	private final OutputStream out;
+	private final XMLStreamWriter xml;
+	
+	/**
+	 * Writes the playlist header to given stream.
+	 * 
+	 * @param out Output stream; should be buffered.
+	 * @param title Playlist title.
+	 * @throws IOException I/O error.
+	 */
+	public XspfWriter(OutputStream out, String title) throws IOException {
+		this.out = Objects.requireNonNull(out);
+		
+		try {
+			out.write(Constants.XML_HEADER.getBytes(StandardCharsets.UTF_8));
+			
+			this.xml = FACTORY.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+			xml.setDefaultNamespace(XSPF_NAMESPACE);
+			xml.writeStartElement(XSPF_NAMESPACE, "playlist");
+			xml.writeDefaultNamespace(XSPF_NAMESPACE);
+			xml.writeNamespace("vlc", VLC_NAMESPACE);
+			xml.writeAttribute("version", "1");
+			
+			writeElement(1, "title", title);
+			indent(1);
+			xml.writeStartElement(XSPF_NAMESPACE, "trackList");
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Writes a single track.
+	 * 
+	 * @param track Track to be written.
+	 * @throws IOException I/O error.
+	 */
+	public void write(Track track) throws IOException {
+		try {
+			indent(2);
+			xml.writeStartElement(XSPF_NAMESPACE, "track");
+			
+			writeElement(3, "location", track.getLocation());
+			if(track.getTitle() != null)
+				writeElement(3, "title", track.getTitle());
+			
+			TrackMetadata metadata = track.getMetadata();
+			if(metadata != null) {
+				if(metadata.getArtist() != null)
+					writeElement(3, "creator", metadata.getArtist());
+				if(metadata.getAlbum() != null)
+					writeElement(3, "album", metadata.getAlbum());
+				if(metadata.getTrackNumber() > 0)
+					writeElement(3, "trackNum", Integer.toString(metadata.getTrackNumber()));
+				if(metadata.getDurationMillis() > 0)
+					writeElement(3, "duration", Long.toString(metadata.getDurationMillis()));
+			}
+			
+			indent(2);
+			xml.writeEndElement();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Finishes the document and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			indent(1);
+			xml.writeEndElement();
+			indent(0);
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			out.close();
+		}
+	}
+	
+	private void writeElement(int depth, String name, String value) throws XMLStreamException {
+		indent(depth);
+		xml.writeStartElement(XSPF_NAMESPACE, name);
+		xml.writeCharacters(value);
+		xml.writeEndElement();
+	}
+	
+	private void indent(int depth) throws XMLStreamException {
+		xml.writeCharacters("\n");
+		for(int i = 0; i < depth; i++)
+			xml.writeCharacters(INDENT);
+	}
+
+}
@@ -0,0 +1,364 @@
+package co.kukurin.xml.items;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import co.kukurin.metadata.TrackMetadata;
+
+/**
+ * Track list storing its tracks in columns of primitive arrays, meant for playlists of millions of entries.
+ * <p>
+ * File names and titles are kept as UTF-8 bytes in a single growing pool, and each track is a row of four
+ * ints: the offset of its bytes within the pool, the lengths of its name and title, and the index of its
+ * directory within a table of distinct directories. Tags are kept in a separate column of references, only
+ * allocated once a tagged track is added, so untagged playlists don't keep any object per track;
+ * {@link #get(int)} creates a new {@link Track} from its row, while {@link #view(int)} returns one of a small
+ * ring of reusable views, meant for rendering only.
+ * <p>
+ * Bytes of removed or replaced tracks are not reclaimed.
+ * 
+ * @author Toni Kukurin
+ *
+ */
+public class ColumnarTrackList extends AbstractList<Track> implements RandomAccess {
+	
+	/**
+	 * Number of views handed out by {@link #view(int)} before the first one is reused; comfortably
+	 * more than the number of rows a list displays at once.
+	 */
+	private static final int VIEW_COUNT = 256;
+	
+	/**
+	 * Title length of tracks with the default title.
+	 */
+	private static final int DEFAULT_TITLE = -1;
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private byte[] pool;
+	private int poolSize;
+	
+	private int[] offsets;
+	private int[] nameLengths;
+	private int[] titleLengths;
+	private int[] directoryIds;
+	
+	/**
+	 * Tags per row; null until a tagged track is added.
+	 */
+	private TrackMetadata[] metadata;
+	private int size;
+	
+	private final List<String> directories;
+	private final Map<String, Integer> directoryIndex;
+	
+	private final TrackView[] views;
+	private int nextView;
+	
+	public ColumnarTrackList() {
+		this.pool = new byte[INITIAL_CAPACITY * 32];
+		this.offsets = new int[INITIAL_CAPACITY];
+		this.nameLengths = new int[INITIAL_CAPACITY];
+		this.titleLengths = new int[INITIAL_CAPACITY];
+		this.directoryIds = new int[INITIAL_CAPACITY];
+		
+		this.directories = new ArrayList<>();
+		this.directoryIndex = new HashMap<>();
+		
+		this.views = new TrackView[VIEW_COUNT];
+		for(int i = 0; i < views.length; i++)
+			views[i] = new TrackView();
+	}
+	
+	/**
+	 * Bulk import entry point; matches {@link co.kukurin.xml.XspfReader.TrackHandler}, so the list can
+	 * be filled directly from a reader.
+	 * 
+	 * @param location Track location, as written in the playlist.
+	 * @param title Track title; null if not present.
+	 * @param metadata Track tags; null if none are present.
+	 */
+	public void add(String location, String title, TrackMetadata metadata) {
+		add(new Track(location, title, metadata));
+	}
+	
+	@Override
+	public boolean add(Track track) {
+		if(size == offsets.length)
+			grow();
+		
+		encode(size++, track);
+		modCount++;
+		return true;
+	}
+	
+	/**
+	 * Only appending is supported.
+	 */
+	@Override
+	public void add(int index, Track track) {
+		if(index != size)
+			throw new UnsupportedOperationException("Tracks can only be appended!");
+		
+		add(track);
+	}
+	
+	@Override
+	public Track get(int index) {
+		checkIndex(index);
+		
+		String directory = directoryIds[index] < 0 ? null : directories.get(directoryIds[index]);
+		String title = titleLengths[index] == DEFAULT_TITLE ? null : decode(offsets[index] + nameLengths[index], titleLengths[index]);
+		
+		return new Track(directory, getName(index), title, false, getMetadata(index));
+	}
+	
+	@Override
+	public Track set(int index, Track track) {
+		Track previous = get(index);
+		encode(index, track);
+		return previous;
+	}
+	
+	@Override
+	public Track remove(int index) {
+		Track previous = get(index);
+		removeRange(index, index + 1);
+		return previous;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public void clear() {
+		size = 0;
+		poolSize = 0;
+		directories.clear();
+		directoryIndex.clear();
+		metadata = null;
+		modCount++;
+	}
+	
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		int count = toIndex - fromIndex;
+		
+		for(int[] column : columns())
+			System.arraycopy(column, toIndex, column, fromIndex, size - toIndex);
+		if(metadata != null) {
+			System.arraycopy(metadata, toIndex, metadata, fromIndex, size - toIndex);
+			Arrays.fill(metadata, size - count, size, null);
+		}
+		
+		size -= count;
+		modCount++;
+	}
+	
+	/**
+	 * Removes given index ranges, moving the remaining rows in a single pass.
+	 * 
+	 * @param ranges Disjoint, inclusive {start, end} index ranges, in increasing order.
+	 */
+	public void removeRanges(List<int[]> ranges) {
+		int write = ranges.get(0)[0];
+		
+		for(int r = 0; r < ranges.size(); r++) {
+			int read = ranges.get(r)[1] + 1;
+			int length = (r + 1 < ranges.size() ? ranges.get(r + 1)[0] : size) - read;
+			
+			for(int[] column : columns())
+				System.arraycopy(column, read, column, write, length);
+			if(metadata != null)
+				System.arraycopy(metadata, read, metadata, write, length);
+			write += length;
+		}
+		
+		if(metadata != null)
+			Arrays.fill(metadata, write, size, null);
+		size = write;
+		modCount++;
+	}
+	
+	/**
+	 * @param index Row index.
+	 * @return Directory of the track at given index, as in {@link Track#getDirectory()}.
+	 */
+	public String getDirectory(int index) {
+		checkIndex(index);
+		return directoryIds[index] < 0 ? null : directories.get(directoryIds[index]);
+	}
+	
+	/**
+	 * @param index Row index.
+	 * @return File name of the track at given index, as in {@link Track#getName()}.
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return decode(offsets[index], nameLengths[index]);
+	}
+	
+	/**
+	 * @param index Row index.
+	 * @return Tags of the track at given index, as in {@link Track#getMetadata()}.
+	 */
+	public TrackMetadata getMetadata(int index) {
+		checkIndex(index);
+		return metadata == null ? null : metadata[index];
+	}
+	
+	/**
+	 * Returns a view of the track at given index, without creating a new object. The view is reused
+	 * after {@link #VIEW_COUNT} further calls, and shows whatever row is at its index at the time it is
+	 * accessed; it should therefore only be used immediately, e.g. for rendering.
+	 * 
+	 * @param index Row index.
+	 * @return View of the track.
+	 */
+	public Track view(int index) {
+		checkIndex(index);
+		
+		TrackView view = views[nextView];
+		nextView = (nextView + 1) % views.length;
+		
+		view.index = index;
+		return view;
+	}
+	
+	private void encode(int index, Track track) {
+		byte[] name = track.getName().getBytes(StandardCharsets.UTF_8);
+		byte[] title = track.getStoredTitle() == null ? null : track.getStoredTitle().getBytes(StandardCharsets.UTF_8);
+		int length = name.length + (title == null ? 0 : title.length);
+		
+		if(poolSize + length > pool.length)
+			pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+		
+		offsets[index] = poolSize;
+		nameLengths[index] = name.length;
+		titleLengths[index] = title == null ? DEFAULT_TITLE : title.length;
+		directoryIds[index] = directoryId(track.getDirectory());
+		
+		if(track.getMetadata() != null && metadata == null)
+			metadata = new TrackMetadata[offsets.length];
+		if(metadata != null)
+			metadata[index] = track.getMetadata();
+		
+		System.arraycopy(name, 0, pool, poolSize, name.length);
+		if(title != null)
+			System.arraycopy(title, 0, pool, poolSize + name.length, title.length);
+		poolSize += length;
+	}
+	
+	private String decode(int offset, int length) {
+		return new String(pool, offset, length, StandardCharsets.UTF_8);
+	}
+	
+	private int directoryId(String directory) {
+		if(directory == null)
+			return -1;
+		
+		return directoryIndex.computeIfAbsent(directory, d -> {
+			directories.add(d);
+			return directories.size() - 1;
+		});
+	}
+	
+	private void grow() {
+		int capacity = offsets.length * 2;
+		
+		offsets = Arrays.copyOf(offsets, capacity);
+		nameLengths = Arrays.copyOf(nameLengths, capacity);
+		titleLengths = Arrays.copyOf(titleLengths, capacity);
+		directoryIds = Arrays.copyOf(directoryIds, capacity);
+		if(metadata != null)
+			metadata = Arrays.copyOf(metadata, capacity);
+	}
+	
+	private int[][] columns() {
+		return new int[][] { offsets, nameLengths, titleLengths, directoryIds };
+	}
+	
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+	}
+	
+	/**
+	 * Flyweight track, reading its contents from a row of the enclosing list.
+	 */
+	private class TrackView extends Track {
+		
+		private int index;
+		
+		private Track track() {
+			return get(index);
+		}
+		
+		@Override
+		public File getFile() {
+			return track().getFile();
+		}
+		
+		@Override
+		public String getDirectory() {
+			return ColumnarTrackList.this.getDirectory(index);
+		}
+		
+		@Override
+		public String getName() {
+			return ColumnarTrackList.this.getName(index);
+		}
+		
+		@Override
+		public String getLocation() {
+			return track().getLocation();
+		}
+		
+		@Override
+		public String getTitle() {
+			return track().getTitle();
+		}
+		
+		@Override
+		public TrackMetadata getMetadata() {
+			return ColumnarTrackList.this.getMetadata(index);
+		}
+		
+		@Override
+		public Track withMetadata(TrackMetadata metadata) {
+			return track().withMetadata(metadata);
+		}
+		
+		@Override
+		public int hashCode() {
+			// same as the hash of the track itself, without materializing it
+			return 31 * Objects.hashCode(getDirectory()) + getName().hashCode();
+		}
+		
+		@Override
+		public String toString() {
+			int length = titleLengths[index];
+			
+			if(length > 0)
+				return decode(offsets[index] + nameLengths[index], length);
+			String name = getName();
+			if(length == 0 || directoryIds[index] < 0)
+				return name;
+			
+			// default title, i.e. the file name without its extension
+			int extensionIndex = name.lastIndexOf('.');
+			return extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
+		}
+	}
+
+}
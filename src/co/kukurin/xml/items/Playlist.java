@@ -4,46 +4,18 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.simpleframework.xml.Attribute;
-import org.simpleframework.xml.Element;
-import org.simpleframework.xml.ElementList;
-import org.simpleframework.xml.Namespace;
-import org.simpleframework.xml.NamespaceList;
-import org.simpleframework.xml.Root;
-
 /**
- * (De)serializable class ready to be used as an XML object.
- * <p>
- * The class represents a default Playlist document with necessary info.
+ * The class represents a default Playlist document with necessary info; see
+ * {@link co.kukurin.xml.XspfWriter} and {@link co.kukurin.xml.XspfReader} for its XML form.
  * 
  * @author Toni Kukurin
  *
  */
-@Root(strict=false)
-@NamespaceList({
-	@Namespace(reference="http://xspf.org/ns/0/"),
-	@Namespace(reference="http://www.videolan.org/vlc/playlist/ns/0/", prefix="vlc")
-})
-// @Version(revision=1, required=false)
 public class Playlist {
 	
-	@Element
 	private String title;
-	
-	@ElementList(name="trackList", entry="track")
 	private List<Track> tracklist;
 	
-	@Attribute
-	private static int version;
-	
-	/**
-	 * Necessary for serialization, otherwise shouldn't be used as
-	 * the title is not set by using this constructor.
-	 */
-	public Playlist() {
-		this("");
-	}
-	
 	/**
 	 * Instantiates a title and empty tracklist.
 	 * @param title Playlist title
@@ -89,6 +61,13 @@ public class Playlist {
 		return remove(new Track(filepath));
 	}
 
+	/**
+	 * @return Playlist title.
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
 	/**
 	 * @return current tracklist.
 	 */
@@ -1,111 +1,247 @@
 package co.kukurin.xml.items;
 
-import java.beans.ConstructorProperties;
 import java.io.File;
+import java.util.Objects;
 
-import org.simpleframework.xml.Element;
-import org.simpleframework.xml.Root;
-import org.simpleframework.xml.core.Commit;
-
+import co.kukurin.metadata.TrackMetadata;
 import co.kukurin.utils.Constants;
+import co.kukurin.utils.StringPool;
 
 /**
- * (De)serializable class ready to be used as an XML object.
- * <p>
  * Represents a track within a playlist with its corresponding attributes and elements.
+ * <p>
+ * Tracks are kept compact, as playlists may hold hundreds of thousands of them: the directory of a local
+ * track is shared with all other tracks from the same directory through {@link #DIRECTORIES}, and only the
+ * file name is stored per track. The location, {@link File} and default title are derived when requested,
+ * and a title is only stored if it differs from the default one.
+ * <p>
+ * Tags read from the track's file or from a playlist are kept as {@link TrackMetadata}; they don't take part
+ * in equality, which only depends on the location.
  * 
  * @author Toni Kukurin
  *
  */
-@Root(strict=false)
 public class Track {
 	
-	private File file;
-
-	@Element
-	private String location;
+	/**
+	 * Pool of directory paths shared by all tracks; paths are only kept as long as some track uses them.
+	 */
+	private static final StringPool DIRECTORIES = new StringPool();
 	
-	@Element(required=false)
-	private String title;
+	/**
+	 * Pooled directory path (without the trailing separator); null if the track is not a local file.
+	 */
+	private final String directory;
 	
 	/**
-	 * Necessary for serialization, otherwise should not be used.
+	 * File name; the entire location if the track is not a local file.
 	 */
-	public Track() {}
+	private final String name;
 	
 	/**
-	 * Serialization commit, occurs after all XML data has been parsed.
+	 * Title, if different from {@link #getDefaultTitle()}.
 	 */
-	@Commit public void commit() {
-		final String checkStart = Constants.VLC_FILE_PREFIX;
-		int checkStartLen = checkStart.length();
-		
-		if(this.location.startsWith(checkStart))
-			this.file = new File(this.location.substring(checkStartLen));
-	}
+	private final String title;
+	
+	/**
+	 * Tags; null if they haven't been read.
+	 */
+	private final TrackMetadata metadata;
+	
+	private final int hash;
 	
 	public Track(File f) {
 		this(f.getAbsolutePath());
 	}
 	
 	public Track(String location) {
-		location = location.replaceAll("\\\\", "/");
-		
-		this.location = Constants.VLC_FILE_PREFIX + location;
-		this.file = new File(location);
-		
-		getFileMetadata();
+		this(Constants.VLC_FILE_PREFIX + location.replace('\\', '/'), null, false, null);
 	}
 	
-	@ConstructorProperties({"location", "title"})
+	/**
+	 * Creates a track as read from a playlist.
+	 * 
+	 * @param location Location as written in the playlist.
+	 * @param title Track title; may be null.
+	 */
 	public Track(String location, String title) {
-		this.location = location;
-		this.title = title;
+		this(location, title, null);
 	}
-
-	private void getFileMetadata() {
-		this.title = file.getName();
+	
+	/**
+	 * Creates a track as read from a playlist.
+	 * 
+	 * @param location Location as written in the playlist.
+	 * @param title Track title; may be null.
+	 * @param metadata Tags written in the playlist; may be null.
+	 */
+	public Track(String location, String title, TrackMetadata metadata) {
+		this(location, title, true, metadata);
+	}
+	
+	private Track(String location, String title, boolean keepMissingTitle, TrackMetadata metadata) {
+		this(pooledDirectoryOf(location), nameOf(location), title, keepMissingTitle, metadata);
+	}
+	
+	/**
+	 * @param directory Directory path, shared with other tracks of the same directory; null if the track is
+	 * not a local file.
+	 * @param name File name; the entire location if the track is not a local file.
+	 * @param title Track title; null for the default title, or for a missing one if so specified.
+	 * @param keepMissingTitle Whether a null title is to be kept as missing.
+	 * @param metadata Tags; null if they haven't been read.
+	 */
+	Track(String directory, String name, String title, boolean keepMissingTitle, TrackMetadata metadata) {
+		this.directory = directory;
+		this.name = name;
+		
+		// a missing title is written back as missing, unless there is no default one to begin with
+		if(title == null && keepMissingTitle && directory != null)
+			title = "";
 		
-		int extensionIndex = title.lastIndexOf('.');
-		if(extensionIndex > 0)
-			this.title = this.title.substring(0, extensionIndex);
+		this.title = Objects.equals(title, getDefaultTitle()) ? null : title;
+		this.metadata = metadata;
+		this.hash = 31 * Objects.hashCode(directory) + name.hashCode();
 	}
 	
+	/**
+	 * Constructor for views which derive their contents elsewhere, and override all accessors.
+	 */
+	protected Track() {
+		this.directory = null;
+		this.name = "";
+		this.title = null;
+		this.metadata = null;
+		this.hash = 0;
+	}
+	
+	private static boolean isLocalFile(String location) {
+		return location.startsWith(Constants.VLC_FILE_PREFIX)
+				&& location.lastIndexOf('/') >= Constants.VLC_FILE_PREFIX.length();
+	}
+	
+	private static String directoryOf(String location) {
+		return isLocalFile(location)
+				? location.substring(Constants.VLC_FILE_PREFIX.length(), location.lastIndexOf('/'))
+				: null;
+	}
+	
+	private static String pooledDirectoryOf(String location) {
+		String directory = directoryOf(location);
+		return directory == null ? null : DIRECTORIES.intern(directory);
+	}
+	
+	private static String nameOf(String location) {
+		return isLocalFile(location) ? location.substring(location.lastIndexOf('/') + 1) : location;
+	}
+	
+	/**
+	 * @return File this track refers to; null if the location is not a local file.
+	 */
 	public File getFile() {
-		return file;
+		return directory == null ? null : new File(directory + '/' + name);
+	}
+	
+	/**
+	 * @return Path of the directory containing this track, as written in the playlist location;
+	 * null if the location is not a local file.
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * @return File name; the entire location if the track is not a local file.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return Title as stored; null for the default title, and empty for a missing one.
+	 */
+	String getStoredTitle() {
+		return title;
+	}
+	
+	/**
+	 * @return Track location as written to the playlist, i.e. prefixed with {@link Constants#VLC_FILE_PREFIX}.
+	 */
+	public String getLocation() {
+		return directory == null ? name : Constants.VLC_FILE_PREFIX + directory + '/' + name;
+	}
+	
+	/**
+	 * @return Tags; null if they haven't been read.
+	 */
+	public TrackMetadata getMetadata() {
+		return metadata;
+	}
+	
+	/**
+	 * @param metadata Tags, e.g. as read from the track's file.
+	 * @return Track with given tags, whose title is the tagged one if present.
+	 */
+	public Track withMetadata(TrackMetadata metadata) {
+		String title = metadata.getTitle() != null ? metadata.getTitle() : this.title;
+		return new Track(directory, name, title, false, metadata);
+	}
+	
+	/**
+	 * @return Track title; may be null.
+	 */
+	public String getTitle() {
+		if(title == null)
+			return getDefaultTitle();
+		
+		return title.isEmpty() ? null : title;
+	}
+	
+	/**
+	 * @return File name without its extension; null if the track is not a local file.
+	 */
+	private String getDefaultTitle() {
+		if(directory == null)
+			return null;
+		
+		int extensionIndex = name.lastIndexOf('.');
+		return extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((file == null) ? 0 : file.hashCode());
-		return result;
+		return hash;
 	}
 
+	/**
+	 * Tracks are equal if their locations are; views of tracks (see {@link ColumnarTrackList}) are compared
+	 * through their accessors, so they are equal to the tracks they represent in both directions.
+	 */
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof Track))
 			return false;
 		Track other = (Track) obj;
-		if (file == null) {
-			if (other.file != null)
-				return false;
-		} else if (!file.equals(other.file))
+		if (hashCode() != other.hashCode())
+			return false;
+		// directories are pooled, so equal directories are usually the same instance
+		String directory = getDirectory();
+		String otherDirectory = other.getDirectory();
+		if (directory != otherDirectory && !Objects.equals(directory, otherDirectory))
 			return false;
-		return true;
+		return getName().equals(other.getName());
 	}
 	
 	@Override
 	public String toString() {
+		String title = getTitle();
+		
 		if(title != null && !title.isEmpty())
 			return title;
 		else
-			return file.getName();
+			return name;
 	}
-	
+
 }